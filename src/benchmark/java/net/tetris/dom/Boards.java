@@ -0,0 +1,42 @@
+package net.tetris.dom;
+
+import java.util.Random;
+
+/**
+ * Occupied rows of a standard glass as games have them: the lower part filled with holes, no full row.
+ */
+class Boards {
+    static final int FULL_ROW = 0b11111111110;
+    static final int LEFT_COLUMN = 1 << TetrisGame.GLASS_WIDTH;
+
+    /**
+     * @param fill percent of rows with blocks, bottom up
+     */
+    static int[] filled(int fill, long seed) {
+        Random random = new Random(seed);
+        int[] rows = new int[TetrisGame.GLASS_HEIGHT];
+        int filledRows = TetrisGame.GLASS_HEIGHT * fill / 100;
+        for (int y = 0; y < filledRows; y++) {
+            int row = 0;
+            for (int x = 1; x <= TetrisGame.GLASS_WIDTH; x++) {
+                if (random.nextInt(10) < 7) {
+                    row |= 1 << x;
+                }
+            }
+            rows[y] = row & ~(1 << (1 + random.nextInt(TetrisGame.GLASS_WIDTH)));
+        }
+        return rows;
+    }
+
+    /**
+     * The filled board with the left column free and the four bottom rows full but for it,
+     * so an upright I dropped at x = 0 removes four lines.
+     */
+    static int[] withWell(int fill, long seed) {
+        int[] rows = filled(fill, seed);
+        for (int y = 0; y < rows.length; y++) {
+            rows[y] = y < 4 ? FULL_ROW & ~LEFT_COLUMN : rows[y] & ~LEFT_COLUMN;
+        }
+        return rows;
+    }
+}
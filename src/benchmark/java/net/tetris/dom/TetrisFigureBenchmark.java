@@ -0,0 +1,43 @@
+package net.tetris.dom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TetrisFigureBenchmark {
+    @Param({"I", "J", "O", "T"})
+    public Figure.Type type;
+
+    private Figure figure;
+
+    @Setup
+    public void setUp() {
+        figure = type.createNewFigure();
+    }
+
+    @Benchmark
+    public Figure rotate() {
+        return figure.rotate(1);
+    }
+
+    @Benchmark
+    public Figure copy() {
+        return figure.getCopy();
+    }
+}
@@ -0,0 +1,57 @@
+package net.tetris.dom;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A game falling and dropping figures on a board kept at the fill level: the board is restored after every drop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TetrisGameBenchmark {
+    @Param({"0", "25", "50", "75"})
+    public int fill;
+
+    private TetrisGlass glass;
+    private TetrisGame game;
+    private int[] board;
+
+    @Setup
+    public void setUp() {
+        board = Boards.filled(fill, 42);
+        glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT);
+        glass.setOccupiedRows(board);
+        game = new TetrisGame(new FigureQueue() {
+            private int next;
+
+            @Override
+            public Figure next() {
+                Figure.Type[] types = Figure.Type.values();
+                return types[next++ % types.length].createNewFigure();
+            }
+        }, glass);
+    }
+
+    @Benchmark
+    public void nextStep() {
+        game.nextStep();
+        if (game.getCurrentFigureType() == null) {
+            glass.setOccupiedRows(board);
+        }
+    }
+}
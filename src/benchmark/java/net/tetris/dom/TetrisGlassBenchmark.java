@@ -0,0 +1,80 @@
+package net.tetris.dom;
+
+import net.tetris.services.Plot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Glass operations of every tick at different fill levels. The drop benchmarks restore the board first,
+ * {@link #restoreBoard()} measures that part alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TetrisGlassBenchmark {
+    @Param({"0", "25", "50", "75"})
+    public int fill;
+
+    private TetrisGlass glass;
+    private int[] board;
+    private int[] boardWithWell;
+    private Figure t;
+    private Figure i;
+
+    @Setup
+    public void setUp() {
+        glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT);
+        board = Boards.filled(fill, 42);
+        boardWithWell = Boards.withWell(fill, 42);
+        glass.setOccupiedRows(board);
+        t = Figure.Type.T.createNewFigure();
+        i = Figure.Type.I.createNewFigure();
+    }
+
+    @Benchmark
+    public boolean acceptAtTop() {
+        return glass.accept(t, 4, TetrisGame.GLASS_HEIGHT - 1);
+    }
+
+    @Benchmark
+    public boolean acceptAtStack() {
+        return glass.accept(t, 4, TetrisGame.GLASS_HEIGHT * fill / 100);
+    }
+
+    @Benchmark
+    public void restoreBoard() {
+        glass.setOccupiedRows(board);
+    }
+
+    @Benchmark
+    public void drop() {
+        glass.setOccupiedRows(board);
+        glass.drop(t, 4, TetrisGame.GLASS_HEIGHT - 1);
+    }
+
+    @Benchmark
+    public void dropRemovingLines() {
+        glass.setOccupiedRows(boardWithWell);
+        glass.drop(i, 0, TetrisGame.GLASS_HEIGHT - 1);
+    }
+
+    @Benchmark
+    public List<Plot> getDroppedPlots() {
+        return glass.getDroppedPlots();
+    }
+}
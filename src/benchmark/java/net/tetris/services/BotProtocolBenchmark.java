@@ -0,0 +1,106 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import net.tetris.dom.Joystick;
+import net.tetris.dom.TetrisGame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bot protocol work of one tick for all players: encoding the glass state of every player
+ * into the callback query and parsing the commands of every bot response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotProtocolBenchmark {
+    private static final String[] RESPONSES = {"left=2,rotate=1,drop", "right=1", "rotate=3, drop", "", "left=0"};
+
+    @Param({"10", "100", "1000"})
+    public int players;
+
+    @Param({"25", "75"})
+    public int fill;
+
+    private PlayerController playerController;
+    private List<int[]> rows;
+    private List<PlayerController.MyContentExchange> exchanges;
+
+    @Setup
+    public void setUp() {
+        playerController = new PlayerController();
+        rows = new ArrayList<>();
+        exchanges = new ArrayList<>();
+        for (PlayerData data : CannedScreens.create(players, fill, 18, 42).values()) {
+            rows.add(rowsOf(data.getDroppedPlots()));
+        }
+        for (int i = 0; i < players; i++) {
+            exchanges.add(new PlayerController.MyContentExchange(new IdleJoystick(),
+                    new Player("player" + i, "http://player" + i + ":8888", new PlayerScores()),
+                    new CallbackCircuitBreaker()));
+        }
+    }
+
+    @Benchmark
+    public void buildState(Blackhole blackhole) {
+        for (int[] playerRows : rows) {
+            blackhole.consume(playerController.buildState(Figure.Type.T, 4, 18, playerRows));
+        }
+    }
+
+    private static int[] rowsOf(List<Plot> plots) {
+        int[] rows = new int[TetrisGame.GLASS_HEIGHT];
+        for (Plot plot : plots) {
+            rows[plot.getY()] |= 1 << TetrisGame.GLASS_WIDTH - plot.getX();
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public void parseCommands() {
+        for (int i = 0; i < exchanges.size(); i++) {
+            exchanges.get(i).process(RESPONSES[i % RESPONSES.length]);
+        }
+    }
+
+    private static class IdleJoystick implements Joystick {
+        private int moves;
+
+        @Override
+        public void moveLeft(int delta) {
+            moves += delta;
+        }
+
+        @Override
+        public void moveRight(int delta) {
+            moves -= delta;
+        }
+
+        @Override
+        public void drop() {
+            moves++;
+        }
+
+        @Override
+        public void rotate(int times) {
+            moves += times;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import net.tetris.dom.TetrisGame;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Screens of many players as the tick builds them: the lower part of every glass filled with holes
+ * and a T figure falling from the top.
+ */
+class CannedScreens {
+    /**
+     * @param fill percent of rows with blocks, bottom up
+     * @param figureY row of the falling figure, screens of consecutive ticks differ by it only
+     */
+    static Map<Player, PlayerData> create(int players, int fill, int figureY, long seed) {
+        Random random = new Random(seed);
+        Map<Player, PlayerData> screens = new LinkedHashMap<>();
+        for (int i = 0; i < players; i++) {
+            List<Plot> dropped = droppedPlots(fill, random);
+            List<Plot> plots = new ArrayList<>(dropped);
+            plots.addAll(figurePlots(4, figureY));
+            screens.put(new Player("player" + i, "http://player" + i + ":8888", new PlayerScores()),
+                    new PlayerData(plots, 1000 + i, dropped, Figure.Type.T, 0, 4, figureY));
+        }
+        return screens;
+    }
+
+    static List<Plot> droppedPlots(int fill, Random random) {
+        List<Plot> plots = new ArrayList<>();
+        int rows = TetrisGame.GLASS_HEIGHT * fill / 100;
+        for (int y = 0; y < rows; y++) {
+            int hole = random.nextInt(TetrisGame.GLASS_WIDTH);
+            for (int x = 0; x < TetrisGame.GLASS_WIDTH; x++) {
+                if (x != hole && random.nextInt(10) < 7) {
+                    plots.add(new Plot(x, y, PlotColor.CYAN));
+                }
+            }
+        }
+        return plots;
+    }
+
+    static List<Plot> figurePlots(int x, int y) {
+        List<Plot> plots = new ArrayList<>();
+        plots.add(new Plot(x, y, PlotColor.CYAN));
+        plots.add(new Plot(x - 1, y - 1, PlotColor.CYAN));
+        plots.add(new Plot(x, y - 1, PlotColor.CYAN));
+        plots.add(new Plot(x + 1, y - 1, PlotColor.CYAN));
+        return plots;
+    }
+}
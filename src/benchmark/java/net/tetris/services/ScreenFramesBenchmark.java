@@ -0,0 +1,88 @@
+package net.tetris.services;
+
+import net.tetris.web.controller.UpdateRequest;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding screens of all players for one tick, as spectators watching everybody get them:
+ * full plots, delta since the previous tick, compact and gzipped full plots. Every invocation is a new tick,
+ * alternating between two canned screens differing by the position of the falling figures.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScreenFramesBenchmark {
+    @Param({"10", "100", "1000"})
+    public int players;
+
+    @Param({"25", "75"})
+    public int fill;
+
+    private Map<Player, PlayerData>[] screens;
+    private ScreenHistory history;
+    private long sequence;
+    private UpdateRequest full;
+    private UpdateRequest delta;
+    private UpdateRequest compact;
+    private UpdateRequest gzipped;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        screens = new Map[]{
+                CannedScreens.create(players, fill, 18, 42),
+                CannedScreens.create(players, fill, 17, 42)};
+        history = new ScreenHistory();
+        full = new UpdateRequest(null, true, null);
+        delta = new UpdateRequest(null, true, null);
+        compact = new UpdateRequest(null, true, null);
+        compact.setFormat(ScreenFormat.COMPACT);
+        gzipped = new UpdateRequest(null, true, null);
+        gzipped.setGzipAccepted(true);
+        nextFrames();
+    }
+
+    @Benchmark
+    public void full() throws IOException {
+        nextFrames().writeTo(NullOutputStream.NULL_OUTPUT_STREAM, full);
+    }
+
+    @Benchmark
+    public void delta() throws IOException {
+        delta.setLastSequence(sequence);
+        nextFrames().writeTo(NullOutputStream.NULL_OUTPUT_STREAM, delta);
+    }
+
+    @Benchmark
+    public void compact() throws IOException {
+        nextFrames().writeTo(NullOutputStream.NULL_OUTPUT_STREAM, compact);
+    }
+
+    @Benchmark
+    public byte[] gzipped() throws IOException {
+        return nextFrames().getGzippedBody(gzipped);
+    }
+
+    private ScreenFrames nextFrames() {
+        sequence++;
+        return new ScreenFrames(sequence, screens[(int) (sequence % 2)], history);
+    }
+}
@@ -70,4 +70,9 @@ public interface Figure {
     int getWidth();
 
     Figure getCopy();
+
+    /**
+     * @return number of clockwise quarter turns from the initial position, 0..3
+     */
+    int getRotation();
 }
@@ -16,4 +16,9 @@ public interface Glass {
     List<Plot> getDroppedPlots();
 
     List<Plot> getCurrentFigurePlots();
+
+    /**
+     * @return copy of the occupied rows, bottom row first, bit <code>width - x</code> set for an occupied column x
+     */
+    int[] getOccupiedRows();
 }
@@ -14,6 +14,18 @@ public class Levels implements GlassEventListener {
         levels[0].apply();
     }
 
+    public int getCurrentLevel() {
+        return currentLevel;
+    }
+
+    /**
+     * Continues from a saved level
+     */
+    public void setCurrentLevel(int level) {
+        currentLevel = level;
+        levels[level].apply();
+    }
+
     @Override
     public void glassOverflown() {
         applyLevelIfAccepted(new GlassEvent<Void>(GlassEvent.Type.GLASS_OVERFLOW, null));
@@ -6,6 +6,7 @@ public class TetrisFigure implements Figure, Cloneable {
     private Type type;
     public String[] rows = new String[]{"#"};
     private int[] codes;
+    private int rotation;
 
     @Deprecated
     public TetrisFigure() {
@@ -59,6 +60,7 @@ public class TetrisFigure implements Figure, Cloneable {
         int realRotates = times % 4;
         for (int i = 0; i < realRotates; i++) {
             performRotate();
+            rotation = (rotation + 1) % 4;
         }
         return this;
     }
@@ -101,6 +103,11 @@ public class TetrisFigure implements Figure, Cloneable {
         }
     }
 
+    @Override
+    public int getRotation() {
+        return rotation;
+    }
+
     @Override
     public Type getType() {
         return type;
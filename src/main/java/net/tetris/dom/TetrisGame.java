@@ -20,6 +20,22 @@ public class TetrisGame implements Joystick, Cloneable {
         takeFigure();
     }
 
+    /**
+     * Game continuing from a saved state
+     * @param currentFigure figure falling at x, y, null between a drop and the next figure
+     */
+    public TetrisGame(FigureQueue queue, Glass glass, Figure currentFigure, int x, int y, boolean dropRequested) {
+        this.queue = queue;
+        this.glass = glass;
+        this.currentFigure = currentFigure;
+        this.x = x;
+        this.y = y;
+        this.dropRequested = dropRequested;
+        if (currentFigure != null) {
+            showCurrentFigure();
+        }
+    }
+
     private void takeFigure() {
         x = GLASS_WIDTH /2 - 1;
         currentFigure = queue.next();
@@ -106,6 +122,13 @@ public class TetrisGame implements Joystick, Cloneable {
         return currentFigure.getType();
     }
 
+    public int getCurrentFigureRotation() {
+        if (currentFigure == null) {
+            return 0;
+        }
+        return currentFigure.getRotation();
+    }
+
     public int getCurrentFigureX() {
         return x;
     }
@@ -114,4 +137,8 @@ public class TetrisGame implements Joystick, Cloneable {
         return y;
     }
 
+    public boolean isDropRequested() {
+        return dropRequested;
+    }
+
 }
@@ -28,17 +28,18 @@ public class TetrisGlass implements Glass {
             return false;
         }
 
-        int[] alignedRows = alignFigureRowCoordinatesWithGlass(figure, x);
-        boolean isOccupied = false;
-        for (int i = 0; i < alignedRows.length; i++) {
-            int alignedRow = alignedRows[i];
+        int[] rows = figure.getRowCodes();
+        int shift = alignmentShift(figure, x);
+        for (int i = 0; i < rows.length; i++) {
             int rowPosition = y - i + figure.getTop();
             if (rowPosition >= height) {
                 continue;
             }
-            isOccupied |= (occupied[rowPosition] & alignedRow) > 0;
+            if ((occupied[rowPosition] & rows[i] << shift) != 0) {
+                return false;
+            }
         }
-        return !isOccupied;
+        return true;
     }
 
     private boolean isOutside(Figure figure, int x, int y) {
@@ -79,13 +80,14 @@ public class TetrisGlass implements Glass {
     }
 
     private void performDrop(Figure figure, int x, int position) {
-        int[] alignedRows = alignFigureRowCoordinatesWithGlass(figure, x);
-        for (int i = 0; i < alignedRows.length; i++) {
-            int rowPosition = position + alignedRows.length - i - 1;
+        int[] rows = figure.getRowCodes();
+        int shift = alignmentShift(figure, x);
+        for (int i = 0; i < rows.length; i++) {
+            int rowPosition = position + rows.length - i - 1;
             if (rowPosition >= occupied.length) {
                 continue;
             }
-            occupied[rowPosition] |= alignedRows[i];
+            occupied[rowPosition] |= rows[i] << shift;
         }
 
         for (GlassEventListener glassEventListener : glassEventListeners) {
@@ -117,13 +119,12 @@ public class TetrisGlass implements Glass {
         return myPosition;
     }
 
-    private int[] alignFigureRowCoordinatesWithGlass(Figure figure, int x) {
-        int[] rows = figure.getRowCodes();
-        int[] result = new int[figure.getRowCodes().length];
-        for (int i = 0; i < rows.length; i++) {
-            result[i] = rows[i] << (width - x - figure.getRight());
-        }
-        return result;
+    /**
+     * Figure row codes shifted by this are aligned with the glass rows, computed in place
+     * so checking and dropping a figure allocates nothing
+     */
+    private int alignmentShift(Figure figure, int x) {
+        return width - x - figure.getRight();
     }
 
     public void empty() {
@@ -173,6 +174,15 @@ public class TetrisGlass implements Glass {
         return plots;
     }
 
+    @Override
+    public int[] getOccupiedRows() {
+        return occupied.clone();
+    }
+
+    public void setOccupiedRows(int[] rows) {
+        System.arraycopy(rows, 0, occupied, 0, Math.min(rows.length, occupied.length));
+    }
+
     public boolean isEmpty() {
         for (int anOccupied : occupied) {
             if (anOccupied != 0) {
@@ -0,0 +1,13 @@
+package net.tetris.services;
+
+/**
+ * Persistent connection to a player's bot. Game state is pushed down the channel every tick,
+ * commands sent back by the bot are applied to the player's joystick.
+ */
+public interface BotChannel {
+    void sendState(String state);
+
+    boolean isOpen();
+
+    void close();
+}
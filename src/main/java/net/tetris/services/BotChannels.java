@@ -0,0 +1,41 @@
+package net.tetris.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Open push channels of the players. Players without an open channel are polled over their callback URL.
+ */
+@Component("botChannels")
+public class BotChannels {
+    private ConcurrentMap<String, BotChannel> channels = new ConcurrentHashMap<>();
+
+    public void register(String playerName, BotChannel channel) {
+        BotChannel previous = channels.put(playerName, channel);
+        if (previous != null && previous != channel) {
+            previous.close();
+        }
+    }
+
+    public void unregister(String playerName, BotChannel channel) {
+        channels.remove(playerName, channel);
+    }
+
+    public BotChannel getChannel(String playerName) {
+        BotChannel channel = channels.get(playerName);
+        if (channel == null) {
+            return null;
+        }
+        if (!channel.isOpen()) {
+            channels.remove(playerName, channel);
+            return null;
+        }
+        return channel;
+    }
+
+    public int size() {
+        return channels.size();
+    }
+}
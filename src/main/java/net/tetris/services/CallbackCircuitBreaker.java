@@ -0,0 +1,212 @@
+package net.tetris.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of unreachable player callback URLs.
+ * After {@link #setFailureThreshold(int)} consecutive failures the circuit is opened and no requests are
+ * sent to the player until the backoff expires. Then a single probe request is let through (half-open state):
+ * success closes the circuit, failure opens it again with doubled backoff (up to {@link #setMaxBackoff(long)}).
+ * Failures are logged without stack traces: a line for the first failure of a player, then one summary of all
+ * players at most once per {@link #setLogInterval(long)}, so many dead bots don't flood the log.
+ */
+public class CallbackCircuitBreaker {
+    private static final int SAMPLE_NAMES = 5;
+
+    private static Logger logger = LoggerFactory.getLogger(CallbackCircuitBreaker.class);
+
+    private ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private int failureThreshold = 3;
+    private long initialBackoff = 2000;
+    private long maxBackoff = 5 * 60 * 1000;
+    private long logInterval = 60 * 1000;
+
+    private final AtomicInteger failuresSinceReport = new AtomicInteger();
+    private final AtomicLong lastReportTime = new AtomicLong(Long.MIN_VALUE);
+
+    public boolean allowRequest(Player player) {
+        return getCircuit(player).allowRequest(now());
+    }
+
+    public void requestSucceeded(Player player) {
+        getCircuit(player).succeeded();
+    }
+
+    public void requestFailed(Player player, String reason) {
+        long now = now();
+        getCircuit(player).failed(player, reason, now);
+        failuresSinceReport.incrementAndGet();
+        String report = takeReport(now);
+        if (report != null) {
+            logger.warn(report);
+        }
+    }
+
+    /**
+     * Forgets all players, called when the players are cleared
+     */
+    public void clear() {
+        circuits.clear();
+    }
+
+    /**
+     * @return summary of failures since the last one, null when the last one is more recent than the log interval
+     */
+    String takeReport(long now) {
+        long last = lastReportTime.get();
+        if (last == Long.MIN_VALUE) {
+            lastReportTime.compareAndSet(last, now);
+            return null;
+        }
+        if (now - last < logInterval || !lastReportTime.compareAndSet(last, now)) {
+            return null;
+        }
+        int failures = failuresSinceReport.getAndSet(0);
+        if (failures == 0) {
+            return null;
+        }
+        int open = 0;
+        StringBuilder names = new StringBuilder();
+        for (Map.Entry<String, Circuit> entry : circuits.entrySet()) {
+            if (!entry.getValue().isFailing()) {
+                continue;
+            }
+            if (open < SAMPLE_NAMES) {
+                names.append(open == 0 ? "" : ", ").append(entry.getKey());
+            }
+            open++;
+        }
+        StringBuilder message = new StringBuilder();
+        message.append(failures).append(" player callback failures in the last ").append(now - last)
+                .append(" ms, ").append(open).append(" players failing");
+        if (open > 0) {
+            message.append(": ").append(names);
+            if (open > SAMPLE_NAMES) {
+                message.append(", ...");
+            }
+        }
+        return message.toString();
+    }
+
+    public boolean isOpen(Player player) {
+        Circuit circuit = circuits.get(player.getName());
+        return circuit != null && circuit.isOpen(player.getCallbackUrl());
+    }
+
+    private Circuit getCircuit(Player player) {
+        Circuit circuit = circuits.get(player.getName());
+        if (circuit == null) {
+            Circuit newCircuit = new Circuit();
+            circuit = circuits.putIfAbsent(player.getName(), newCircuit);
+            if (circuit == null) {
+                circuit = newCircuit;
+            }
+        }
+        circuit.resetIfUrlChanged(player.getCallbackUrl());
+        return circuit;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * @param initialBackoff time in milliseconds the circuit stays open after it was opened for the first time
+     */
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public void setLogInterval(long logInterval) {
+        this.logInterval = logInterval;
+    }
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private class Circuit {
+        private String callbackUrl;
+        private State state = State.CLOSED;
+        private int failures;
+        private long backoff;
+        private long openUntil;
+
+        synchronized void resetIfUrlChanged(String url) {
+            if (url == null ? callbackUrl == null : url.equals(callbackUrl)) {
+                return;
+            }
+            callbackUrl = url;
+            state = State.CLOSED;
+            failures = 0;
+            backoff = 0;
+        }
+
+        synchronized boolean allowRequest(long now) {
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now < openUntil) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        synchronized void succeeded() {
+            if (state != State.CLOSED) {
+                logger.info("Player callback " + callbackUrl + " is reachable again");
+            }
+            state = State.CLOSED;
+            failures = 0;
+            backoff = 0;
+        }
+
+        synchronized void failed(Player player, String reason, long now) {
+            failures++;
+            if (state == State.HALF_OPEN) {
+                backoff = Math.min(backoff * 2, maxBackoff);
+                open(now);
+            } else if (state == State.CLOSED && failures >= failureThreshold) {
+                backoff = initialBackoff;
+                open(now);
+            }
+            if (failures == 1) {
+                logger.warn("Player " + player.getName() + " callback " + callbackUrl + " failed: " + reason);
+            }
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openUntil = now + backoff;
+        }
+
+        synchronized boolean isFailing() {
+            return failures > 0;
+        }
+
+        synchronized boolean isOpen(String url) {
+            return url != null && url.equals(callbackUrl) && state != State.CLOSED;
+        }
+    }
+}
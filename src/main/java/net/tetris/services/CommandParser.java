@@ -0,0 +1,55 @@
+package net.tetris.services;
+
+import net.tetris.dom.Joystick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes player commands like <code>left=1,right=2,rotate=3,drop</code> and applies them to the joystick.
+ */
+public class CommandParser {
+    private static Logger logger = LoggerFactory.getLogger(CommandParser.class);
+
+    private static final Pattern PATTERN = Pattern.compile("((left)=(\\d*))|((right)=(\\d*))|((rotate)=(\\d*))|(drop)", Pattern.CASE_INSENSITIVE);
+
+    public void process(String content, Joystick joystick, String playerName) {
+        Matcher matcher = PATTERN.matcher(content);
+        while (matcher.find()) {
+            int groupsCount = matcher.groupCount();
+            for (int i = 0; i <= groupsCount; i++) {
+                String group = matcher.group(i);
+                if (null == group) {
+                    continue;
+                }
+                if (recognizeCommand(matcher, i, group, joystick, playerName)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean recognizeCommand(Matcher matcher, int i, String group, Joystick joystick, String playerName) {
+        try {
+            switch (group.toLowerCase()) {
+                case "left":
+                    joystick.moveLeft(Integer.parseInt(matcher.group(i + 1)));
+                    return true;
+                case "right":
+                    joystick.moveRight(Integer.parseInt(matcher.group(i + 1)));
+                    return true;
+                case "rotate":
+                    joystick.rotate(Integer.parseInt(matcher.group(i + 1)));
+                    return true;
+                case "drop":
+                    joystick.drop();
+                    return true;
+            }
+        } catch (NumberFormatException e) {
+            logger.error("Player " + playerName + " sent wrong command", e);
+        }
+        return false;
+    }
+}
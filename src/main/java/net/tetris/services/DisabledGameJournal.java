@@ -0,0 +1,53 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+
+/**
+ * Journal used when none is configured, forgets all events
+ */
+class DisabledGameJournal implements GameJournal {
+    @Override
+    public void replay(GameEvents events) {
+    }
+
+    @Override
+    public void replay(GameEvents events, long mark) {
+    }
+
+    @Override
+    public long mark() {
+        return 0;
+    }
+
+    @Override
+    public void discardBefore(long mark) {
+    }
+
+    @Override
+    public void playerRegistered(int player, String name, String callbackUrl, String token, long seed) {
+    }
+
+    @Override
+    public void callbackUrlChanged(int player, String callbackUrl) {
+    }
+
+    @Override
+    public void figureTaken(int player, Figure.Type type) {
+    }
+
+    @Override
+    public void commandApplied(int player, int command, int value) {
+    }
+
+    @Override
+    public void tickFinished(long tick) {
+    }
+
+    @Override
+    public void stateRecorded(int player, int glassHash, int score) {
+    }
+
+    @Override
+    public void cleared() {
+    }
+}
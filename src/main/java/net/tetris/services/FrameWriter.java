@@ -0,0 +1,110 @@
+package net.tetris.services;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Minimal JSON writer over a reusable byte buffer. One instance is reused for all frames of a tick,
+ * so encoding allocates only the resulting byte arrays.
+ */
+class FrameWriter {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] HEX = "0123456789abcdef".getBytes(UTF8);
+
+    private byte[] buffer;
+    private int size;
+
+    FrameWriter() {
+        this(4096);
+    }
+
+    FrameWriter(int initialCapacity) {
+        buffer = new byte[initialCapacity];
+    }
+
+    FrameWriter reset() {
+        size = 0;
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    FrameWriter write(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+        return this;
+    }
+
+    FrameWriter write(byte[] bytes) {
+        return write(bytes, 0, bytes.length);
+    }
+
+    FrameWriter write(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    FrameWriter write(int value) {
+        if (value == Integer.MIN_VALUE) {
+            return write(Integer.toString(value).getBytes(UTF8));
+        }
+        ensureCapacity(11);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Writes quoted and escaped JSON string
+     */
+    FrameWriter writeString(String value) {
+        write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                write('\\').write(c);
+            } else if (c < 0x20) {
+                write('\\').write('u').write('0').write('0').write((char) HEX[c >> 4]).write((char) HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                write(c);
+            } else {
+                int end = i + 1;
+                while (end < value.length() && value.charAt(end) >= 0x80) {
+                    end++;
+                }
+                write(value.substring(i, end).getBytes(UTF8));
+                i = end - 1;
+            }
+        }
+        return write('"');
+    }
+
+    static byte[] ascii(String value) {
+        return value.getBytes(UTF8);
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+}
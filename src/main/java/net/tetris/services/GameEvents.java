@@ -0,0 +1,39 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+
+/**
+ * Everything that changes the state of games, enough to rebuild all games by replaying the events in order.
+ * Players are identified by their registration index.
+ */
+public interface GameEvents {
+    int LEFT = 0;
+    int RIGHT = 1;
+    int ROTATE = 2;
+    int DROP = 3;
+
+    /**
+     * @param seed seed of the player's figure draws
+     */
+    void playerRegistered(int player, String name, String callbackUrl, String token, long seed);
+
+    void callbackUrlChanged(int player, String callbackUrl);
+
+    void figureTaken(int player, Figure.Type type);
+
+    /**
+     * @param command one of {@link #LEFT}, {@link #RIGHT}, {@link #ROTATE}, {@link #DROP}
+     */
+    void commandApplied(int player, int command, int value);
+
+    void tickFinished(long tick);
+
+    /**
+     * State of the player's game right after the tick, recorded every few ticks to check replays against
+     *
+     * @param glassHash hash of the occupied rows of the glass
+     */
+    void stateRecorded(int player, int glassHash, int score);
+
+    void cleared();
+}
@@ -0,0 +1,25 @@
+package net.tetris.services;
+
+import java.io.IOException;
+
+/**
+ * Durable log of {@link GameEvents}. Events replayed into the journal itself are not written again.
+ */
+public interface GameJournal extends GameEvents {
+    void replay(GameEvents events) throws IOException;
+
+    /**
+     * Replays events written after the mark
+     */
+    void replay(GameEvents events, long mark) throws IOException;
+
+    /**
+     * @return position after the events written so far
+     */
+    long mark();
+
+    /**
+     * Deletes events written before the mark, as far as the journal can do it
+     */
+    void discardBefore(long mark);
+}
@@ -0,0 +1,234 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import net.tetris.dom.FigureQueue;
+import net.tetris.dom.TetrisGame;
+import net.tetris.dom.TetrisGlass;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-runs the game of one player from the journal, without screens and callbacks, as fast as the CPU allows.
+ * The game starts from the journaled seed and gets the journaled commands at the ticks they were applied,
+ * every figure drawn is checked against the figure the live game took, and the glass and score against
+ * the states recorded every {@link PlayerService#STATE_RECORD_INTERVAL} ticks.
+ * <p/>
+ * <code>java -cp ... net.tetris.services.GameReplay &lt;journal directory&gt; &lt;player&gt; [tick]</code>
+ * prints the game at the tick. Run it on a copy of the journal of a running server.
+ */
+public class GameReplay implements GameEvents {
+    private final String playerName;
+
+    private int player = -1;
+    private boolean registered;
+    private long seed;
+    private long registeredTick;
+    private long lastTick;
+    private long currentTick;
+    private final Map<Long, List<int[]>> commandsByTick = new HashMap<>();
+    private final List<Figure.Type> recordedFigures = new ArrayList<>();
+    private final Map<Long, int[]> recordedStates = new HashMap<>();
+
+    private PlayerScores scores;
+    private TetrisGlass glass;
+    private TetrisGame game;
+    private long tick;
+    private int figuresTaken;
+    private long divergedTick = -1;
+
+    public GameReplay(String playerName) {
+        this.playerName = playerName;
+    }
+
+    /**
+     * @return recording of the last game of the player in the journal
+     */
+    public static GameReplay load(GameJournal journal, String playerName) throws IOException {
+        GameReplay replay = new GameReplay(playerName);
+        journal.replay(replay);
+        return replay;
+    }
+
+    @Override
+    public void playerRegistered(int player, String name, String callbackUrl, String token, long seed) {
+        if (!playerName.equals(name)) {
+            return;
+        }
+        this.player = player;
+        this.seed = seed;
+        registered = true;
+        registeredTick = currentTick;
+        lastTick = currentTick;
+        commandsByTick.clear();
+        recordedFigures.clear();
+        recordedStates.clear();
+        game = null;
+    }
+
+    @Override
+    public void callbackUrlChanged(int player, String callbackUrl) {
+    }
+
+    @Override
+    public void figureTaken(int player, Figure.Type type) {
+        if (player == this.player) {
+            recordedFigures.add(type);
+        }
+    }
+
+    @Override
+    public void commandApplied(int player, int command, int value) {
+        if (player != this.player) {
+            return;
+        }
+        List<int[]> commands = commandsByTick.get(currentTick + 1);
+        if (commands == null) {
+            commands = new ArrayList<>();
+            commandsByTick.put(currentTick + 1, commands);
+        }
+        commands.add(new int[]{command, value});
+    }
+
+    @Override
+    public void tickFinished(long tick) {
+        currentTick = tick;
+        if (player >= 0) {
+            lastTick = tick;
+        }
+    }
+
+    @Override
+    public void stateRecorded(int player, int glassHash, int score) {
+        if (player == this.player) {
+            recordedStates.put(currentTick, new int[]{glassHash, score});
+        }
+    }
+
+    @Override
+    public void cleared() {
+        player = -1;
+    }
+
+    public boolean isRecorded() {
+        return registered;
+    }
+
+    public long getRegisteredTick() {
+        return registeredTick;
+    }
+
+    /**
+     * @return last tick the game was played
+     */
+    public long getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * Moves the game to the state right after the tick, from the start when the tick is behind the game
+     */
+    public void runTo(long targetTick) {
+        if (!isRecorded()) {
+            throw new IllegalStateException("Player " + playerName + " is not in the journal");
+        }
+        if (game == null || targetTick < tick) {
+            start();
+        }
+        while (tick < targetTick && tick < lastTick) {
+            tick++;
+            List<int[]> commands = commandsByTick.get(tick);
+            if (commands != null && game.getCurrentFigureType() != null) {
+                for (int[] command : commands) {
+                    JournaledJoystick.apply(command[0], command[1], game);
+                }
+            }
+            game.nextStep();
+            int[] recorded = recordedStates.get(tick);
+            if (recorded != null && divergedTick < 0
+                    && (PlayerService.glassHash(glass) != recorded[0] || scores.getScore() != recorded[1])) {
+                divergedTick = tick;
+            }
+        }
+    }
+
+    private void start() {
+        scores = new PlayerScores();
+        final PlayerFigures figures = new PlayerFigures(seed);
+        glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT, scores, PlayerService.createLevels(figures));
+        tick = registeredTick;
+        figuresTaken = 0;
+        divergedTick = -1;
+        game = new TetrisGame(new FigureQueue() {
+            @Override
+            public Figure next() {
+                Figure figure = figures.next();
+                if (figuresTaken < recordedFigures.size() && recordedFigures.get(figuresTaken) != figure.getType()
+                        && divergedTick < 0) {
+                    divergedTick = tick;
+                }
+                figuresTaken++;
+                return figure;
+            }
+        }, glass);
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getScore() {
+        return scores.getScore();
+    }
+
+    public List<Plot> getDroppedPlots() {
+        return glass.getDroppedPlots();
+    }
+
+    public List<Plot> getCurrentFigurePlots() {
+        return glass.getCurrentFigurePlots();
+    }
+
+    public Figure.Type getCurrentFigureType() {
+        return game.getCurrentFigureType();
+    }
+
+    /**
+     * @return first tick the replayed game drew a figure other than the live game did, or its glass or score differed
+     * from the recorded state, -1 when it matches
+     */
+    public long getDivergedTick() {
+        return divergedTick;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: GameReplay <journal directory> <player> [tick]");
+            System.exit(1);
+        }
+        MappedGameJournal journal = new MappedGameJournal();
+        journal.setDirectory(args[0]);
+        journal.open();
+        try {
+            GameReplay replay = load(journal, args[1]);
+            if (!replay.isRecorded()) {
+                System.err.println("Player " + args[1] + " is not in the journal");
+                System.exit(1);
+            }
+            long started = System.nanoTime();
+            replay.runTo(args.length > 2 ? Long.parseLong(args[2]) : replay.getLastTick());
+            System.out.println("Player " + args[1] + " at tick " + replay.getTick() + " of " + replay.getRegisteredTick()
+                    + ".." + replay.getLastTick() + " replayed in " + (System.nanoTime() - started) / 1000000 + " ms");
+            System.out.println("Score: " + replay.getScore());
+            System.out.println("Figure: " + replay.getCurrentFigureType() + " " + replay.getCurrentFigurePlots());
+            System.out.println("Dropped: " + replay.getDroppedPlots());
+            System.out.println(replay.getDivergedTick() < 0 ? "Game matches the recording"
+                    : "Game differs from the recording since tick " + replay.getDivergedTick());
+        } finally {
+            journal.close();
+        }
+    }
+}
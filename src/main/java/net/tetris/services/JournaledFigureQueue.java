@@ -0,0 +1,39 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import net.tetris.dom.FigureQueue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Journals every figure taken by the player's game. While replaying, gives the journaled figures;
+ * figures are drawn anyway so the seeded draws continue where they stopped.
+ */
+class JournaledFigureQueue implements FigureQueue {
+    private final FigureQueue figures;
+    private final GameEvents journal;
+    private final int player;
+    private final Deque<Figure.Type> replayed = new ArrayDeque<>();
+
+    JournaledFigureQueue(FigureQueue figures, GameEvents journal, int player) {
+        this.figures = figures;
+        this.journal = journal;
+        this.player = player;
+    }
+
+    void replay(Figure.Type type) {
+        replayed.add(type);
+    }
+
+    @Override
+    public Figure next() {
+        Figure figure = figures.next();
+        Figure.Type type = replayed.poll();
+        if (type != null && type != figure.getType()) {
+            figure = type.createNewFigure();
+        }
+        journal.figureTaken(player, figure.getType());
+        return figure;
+    }
+}
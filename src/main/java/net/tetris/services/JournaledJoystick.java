@@ -0,0 +1,59 @@
+package net.tetris.services;
+
+import net.tetris.dom.Joystick;
+
+/**
+ * Journals commands applied to the player's game
+ */
+class JournaledJoystick implements Joystick {
+    private final Joystick game;
+    private final GameEvents journal;
+    private final int player;
+
+    JournaledJoystick(Joystick game, GameEvents journal, int player) {
+        this.game = game;
+        this.journal = journal;
+        this.player = player;
+    }
+
+    @Override
+    public void moveLeft(int delta) {
+        journal.commandApplied(player, GameEvents.LEFT, delta);
+        game.moveLeft(delta);
+    }
+
+    @Override
+    public void moveRight(int delta) {
+        journal.commandApplied(player, GameEvents.RIGHT, delta);
+        game.moveRight(delta);
+    }
+
+    @Override
+    public void drop() {
+        journal.commandApplied(player, GameEvents.DROP, 0);
+        game.drop();
+    }
+
+    @Override
+    public void rotate(int times) {
+        journal.commandApplied(player, GameEvents.ROTATE, times);
+        game.rotate(times);
+    }
+
+    static void apply(int command, int value, Joystick joystick) {
+        switch (command) {
+            case GameEvents.LEFT:
+                joystick.moveLeft(value);
+                break;
+            case GameEvents.RIGHT:
+                joystick.moveRight(value);
+                break;
+            case GameEvents.ROTATE:
+                joystick.rotate(value);
+                break;
+            case GameEvents.DROP:
+                joystick.drop();
+                break;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package net.tetris.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Players ordered by score, updated as scores change. Indexable skip list: every link knows how many players
+ * it skips, so finding the rank of a player or the start of a page is O(log n) and a page of k players is O(k).
+ * <p/>
+ * Players with equal scores share the rank, see {@link #getRank(String)}. Changes are published
+ * once per tick, {@link #getVersion()} is the tick of the last published change.
+ */
+@Component
+public class Leaderboard {
+    private static final int MAX_LEVEL = 32;
+
+    private final Node head = new Node(null, 0, MAX_LEVEL);
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int level = 1;
+    private int size;
+    private long randomState = 0x2545F4914F6CDD1DL;
+    private boolean changed;
+    private volatile long version;
+
+    /**
+     * Adds the player or moves the player to the new score
+     */
+    public void update(String name, int score) {
+        lock.writeLock().lock();
+        try {
+            Node node = nodes.get(name);
+            if (node != null) {
+                if (node.score == score) {
+                    return;
+                }
+                delete(node);
+            }
+            nodes.put(name, insert(name, score));
+            changed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String name) {
+        lock.writeLock().lock();
+        try {
+            Node node = nodes.remove(name);
+            if (node != null) {
+                delete(node);
+                changed = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < MAX_LEVEL; i++) {
+                head.next[i] = null;
+                head.span[i] = 0;
+            }
+            nodes.clear();
+            level = 1;
+            size = 0;
+            changed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Makes changes since the last tick visible through the version
+     */
+    void publish(long tick) {
+        lock.writeLock().lock();
+        try {
+            if (changed) {
+                version = tick;
+                changed = false;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return 1 + number of players with higher score, 0 for unknown player
+     */
+    public int getRank(String name) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(name);
+            return node == null ? 0 : countHigher(node.score) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the player with rank, null for unknown player
+     */
+    public Entry getEntry(String name) {
+        lock.readLock().lock();
+        try {
+            Node node = nodes.get(name);
+            return node == null ? null : new Entry(node.name, node.score, countHigher(node.score) + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return at most limit players starting at the offset, highest score first
+     */
+    public List<Entry> getTop(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(limit, size - offset)));
+            Node node = nodeAt(offset);
+            int previousScore = 0;
+            int rank = 0;
+            for (int position = offset; node != null && entries.size() < limit; position++) {
+                if (entries.isEmpty()) {
+                    rank = countHigher(node.score) + 1;
+                } else if (node.score != previousScore) {
+                    rank = position + 1;
+                }
+                entries.add(new Entry(node.name, node.score, rank));
+                previousScore = node.score;
+                node = node.next[0];
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Node insert(String name, int score) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && x.next[i].isBefore(score, name)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int nodeLevel = randomLevel();
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = nodeLevel;
+        }
+        Node node = new Node(name, score, nodeLevel);
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        size++;
+        return node;
+    }
+
+    private void delete(Node node) {
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && x.next[i].isBefore(node.score, node.name)) {
+                x = x.next[i];
+            }
+            if (x.next[i] == node) {
+                x.span[i] += node.span[i] - 1;
+                x.next[i] = node.next[i];
+            } else {
+                x.span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+    }
+
+    private int countHigher(int score) {
+        int count = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && x.next[i].score > score) {
+                count += x.span[i];
+                x = x.next[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return node at the 0-based position, null past the end
+     */
+    private Node nodeAt(int position) {
+        if (position < 0 || position >= size) {
+            return null;
+        }
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= position + 1) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+            if (traversed == position + 1) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    private int randomLevel() {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        int nodeLevel = 1 + Long.numberOfTrailingZeros(randomState | (1L << (MAX_LEVEL - 1))) / 2;
+        return Math.min(nodeLevel, MAX_LEVEL);
+    }
+
+    public static class Entry {
+        private final String name;
+        private final int score;
+        private final int rank;
+
+        Entry(String name, int score, int rank) {
+            this.name = name;
+            this.score = score;
+            this.rank = rank;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getRank() {
+            return rank;
+        }
+    }
+
+    private static class Node {
+        final String name;
+        final int score;
+        final Node[] next;
+        final int[] span;
+
+        Node(String name, int score, int level) {
+            this.name = name;
+            this.score = score;
+            next = new Node[level];
+            span = new int[level];
+        }
+
+        /**
+         * Higher scores first, equal scores by name
+         */
+        boolean isBefore(int otherScore, String otherName) {
+            return score > otherScore || score == otherScore && name.compareTo(otherName) < 0;
+        }
+    }
+}
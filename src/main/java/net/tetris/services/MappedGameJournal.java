@@ -0,0 +1,471 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only journal in memory-mapped segment files <code>journal-00000000.seg</code> of fixed-size records.
+ * <p/>
+ * Record of {@link #RECORD_SIZE} bytes: type, 3 reserved bytes, int player, ints a, b, c, long value, 4 reserved bytes.
+ * A registration keeps lengths of the name, callback URL and token in a, b, c and the figure seed in value,
+ * a recorded state keeps the glass hash and the score in a and b.
+ * Strings of a record follow it as continuation records: type, number of used bytes, 30 bytes of UTF-8.
+ * A record with its continuations never crosses a segment, the rest of a segment is left zero.
+ * <p/>
+ * Appending only copies bytes into the mapped segment, so events survive a crash of the process right away.
+ * The background flusher forces segments to disk and maps the next segment ahead, so the tick never waits for the disk.
+ * A mark is the index of a segment in the high int and the position in it in the low int, so marking costs
+ * no disk space; events before a mark are discarded by deleting the whole segments before the segment of the mark.
+ * The journal is disabled when no directory is set.
+ */
+public class MappedGameJournal implements GameJournal {
+    static final int RECORD_SIZE = 32;
+
+    static final byte END = 0;
+    static final byte REGISTERED = 1;
+    static final byte CALLBACK_URL_CHANGED = 2;
+    static final byte FIGURE_TAKEN = 3;
+    static final byte COMMAND_APPLIED = 4;
+    static final byte TICK_FINISHED = 5;
+    static final byte CLEARED = 6;
+    static final byte CONTINUATION = 7;
+    static final byte STATE_RECORDED = 8;
+
+    private static final int CONTINUATION_DATA = RECORD_SIZE - 2;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d{8})\\.seg");
+    private static final byte[] NO_STRINGS = new byte[0];
+
+    private static Logger logger = LoggerFactory.getLogger(MappedGameJournal.class);
+
+    private File directory;
+    private int segmentSize = 64 * 1024 * 1024;
+    private long flushInterval = 1000;
+
+    private MappedByteBuffer current;
+    private int currentIndex;
+    private final List<MappedByteBuffer> unforced = new ArrayList<>();
+    private MappedByteBuffer next;
+    private boolean replaying;
+    private ScheduledExecutorService flusher;
+
+    public void setDirectory(String directory) {
+        this.directory = directory == null || directory.trim().isEmpty() ? null : new File(directory);
+    }
+
+    /**
+     * @param segmentSize size of a segment file in bytes, rounded down to whole records
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = Math.max(64, segmentSize / RECORD_SIZE) * RECORD_SIZE;
+    }
+
+    /**
+     * @param flushInterval milliseconds between forcing written records to disk
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public synchronized void open() throws IOException {
+        if (directory == null) {
+            logger.info("Game journal is disabled, no directory configured");
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+        List<Integer> segments = listSegments();
+        currentIndex = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        current = map(currentIndex);
+        current.position(truncateTornTail(current));
+        flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "game-journal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    logger.error("Unable to flush game journal", e);
+                }
+            }
+        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        logger.info("Game journal is open in " + directory + " at segment " + currentIndex);
+    }
+
+    public void close() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        synchronized (this) {
+            current = null;
+            next = null;
+        }
+    }
+
+    /**
+     * Forces written records to disk and maps the next segment ahead
+     */
+    void flush() {
+        List<MappedByteBuffer> toForce;
+        int nextIndex;
+        synchronized (this) {
+            toForce = new ArrayList<>(unforced);
+            unforced.clear();
+            if (current == null) {
+                return;
+            }
+            toForce.add(current);
+            nextIndex = next == null ? currentIndex + 1 : -1;
+        }
+        for (MappedByteBuffer segment : toForce) {
+            segment.force();
+        }
+        if (nextIndex < 0) {
+            return;
+        }
+        try {
+            MappedByteBuffer mapped = map(nextIndex);
+            synchronized (this) {
+                if (next == null && currentIndex + 1 == nextIndex) {
+                    next = mapped;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to prepare journal segment " + nextIndex, e);
+        }
+    }
+
+    @Override
+    public void replay(GameEvents events) throws IOException {
+        replay(events, 0);
+    }
+
+    @Override
+    public synchronized void replay(GameEvents events, long mark) throws IOException {
+        if (current == null) {
+            return;
+        }
+        replaying = true;
+        try {
+            for (int index : listSegments()) {
+                if (index < segmentOf(mark)) {
+                    continue;
+                }
+                ByteBuffer segment = index == currentIndex ? current.duplicate() : mapReadOnly(index);
+                int start = index == segmentOf(mark) ? positionOf(mark) : 0;
+                for (int position = start; position + RECORD_SIZE <= segment.limit(); ) {
+                    int records = recordsInGroup(segment, position);
+                    if (records <= 0) {
+                        break;
+                    }
+                    dispatch(segment, position, events);
+                    position += records * RECORD_SIZE;
+                }
+            }
+        } finally {
+            replaying = false;
+        }
+    }
+
+    @Override
+    public synchronized long mark() {
+        if (current == null) {
+            return 0;
+        }
+        return (long) currentIndex << 32 | current.position();
+    }
+
+    @Override
+    public void discardBefore(long mark) {
+        if (directory == null) {
+            return;
+        }
+        for (int index : listSegments()) {
+            if (index < segmentOf(mark) && !segmentFile(index).delete()) {
+                logger.warn("Unable to delete journal segment " + segmentFile(index));
+            }
+        }
+    }
+
+    @Override
+    public void playerRegistered(int player, String name, String callbackUrl, String token, long seed) {
+        byte[] nameBytes = bytes(name);
+        byte[] urlBytes = bytes(callbackUrl);
+        byte[] tokenBytes = bytes(token);
+        byte[] strings = new byte[nameBytes.length + urlBytes.length + tokenBytes.length];
+        System.arraycopy(nameBytes, 0, strings, 0, nameBytes.length);
+        System.arraycopy(urlBytes, 0, strings, nameBytes.length, urlBytes.length);
+        System.arraycopy(tokenBytes, 0, strings, nameBytes.length + urlBytes.length, tokenBytes.length);
+        append(REGISTERED, player, length(name, nameBytes), length(callbackUrl, urlBytes), length(token, tokenBytes), seed, strings);
+    }
+
+    @Override
+    public void callbackUrlChanged(int player, String callbackUrl) {
+        byte[] urlBytes = bytes(callbackUrl);
+        append(CALLBACK_URL_CHANGED, player, length(callbackUrl, urlBytes), 0, 0, 0, urlBytes);
+    }
+
+    @Override
+    public void figureTaken(int player, Figure.Type type) {
+        append(FIGURE_TAKEN, player, type.ordinal(), 0, 0, 0, NO_STRINGS);
+    }
+
+    @Override
+    public void commandApplied(int player, int command, int value) {
+        append(COMMAND_APPLIED, player, command, value, 0, 0, NO_STRINGS);
+    }
+
+    @Override
+    public void tickFinished(long tick) {
+        append(TICK_FINISHED, 0, 0, 0, 0, tick, NO_STRINGS);
+    }
+
+    @Override
+    public void stateRecorded(int player, int glassHash, int score) {
+        append(STATE_RECORDED, player, glassHash, score, 0, 0, NO_STRINGS);
+    }
+
+    @Override
+    public void cleared() {
+        append(CLEARED, 0, 0, 0, 0, 0, NO_STRINGS);
+    }
+
+    private synchronized void append(byte type, int player, int a, int b, int c, long value, byte[] strings) {
+        if (current == null || replaying) {
+            return;
+        }
+        int continuations = (strings.length + CONTINUATION_DATA - 1) / CONTINUATION_DATA;
+        int size = (1 + continuations) * RECORD_SIZE;
+        if (current.remaining() < size && !roll()) {
+            return;
+        }
+        if (current.remaining() < size) {
+            logger.error("Journal record of " + size + " bytes does not fit a segment");
+            return;
+        }
+        int start = current.position();
+        current.position(start + 1);
+        current.put((byte) 0).putShort((short) 0).putInt(player).putInt(a).putInt(b).putInt(c).putLong(value).putInt(0);
+        for (int i = 0; i < continuations; i++) {
+            int offset = i * CONTINUATION_DATA;
+            int used = Math.min(CONTINUATION_DATA, strings.length - offset);
+            int record = current.position();
+            current.position(record + 1);
+            current.put((byte) used).put(strings, offset, used);
+            current.position(record + RECORD_SIZE);
+            current.put(record, CONTINUATION);
+        }
+        current.put(start, type);
+    }
+
+    /**
+     * @return false when the journal is broken and stops writing
+     */
+    private boolean roll() {
+        unforced.add(current);
+        currentIndex++;
+        MappedByteBuffer mapped = next;
+        next = null;
+        try {
+            current = mapped != null ? mapped : map(currentIndex);
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to open journal segment " + currentIndex + ", journal stops", e);
+            current = null;
+            return false;
+        }
+    }
+
+    private void dispatch(ByteBuffer segment, int position, GameEvents events) {
+        byte type = segment.get(position);
+        int player = segment.getInt(position + 4);
+        int a = segment.getInt(position + 8);
+        int b = segment.getInt(position + 12);
+        int c = segment.getInt(position + 16);
+        long value = segment.getLong(position + 20);
+        switch (type) {
+            case REGISTERED:
+                byte[] strings = readStrings(segment, position, length(a) + length(b) + length(c));
+                events.playerRegistered(player, string(strings, 0, a), string(strings, length(a), b),
+                        string(strings, length(a) + length(b), c), value);
+                break;
+            case CALLBACK_URL_CHANGED:
+                events.callbackUrlChanged(player, string(readStrings(segment, position, length(a)), 0, a));
+                break;
+            case FIGURE_TAKEN:
+                if (a >= 0 && a < Figure.Type.values().length) {
+                    events.figureTaken(player, Figure.Type.values()[a]);
+                }
+                break;
+            case COMMAND_APPLIED:
+                events.commandApplied(player, a, b);
+                break;
+            case TICK_FINISHED:
+                events.tickFinished(value);
+                break;
+            case CLEARED:
+                events.cleared();
+                break;
+            case STATE_RECORDED:
+                events.stateRecorded(player, a, b);
+                break;
+        }
+    }
+
+    /**
+     * @return number of records of the record at the position with its continuations,
+     * 0 at the end of written records or when the record is torn
+     */
+    private static int recordsInGroup(ByteBuffer segment, int position) {
+        byte type = segment.get(position);
+        int stringBytes;
+        switch (type) {
+            case REGISTERED:
+                stringBytes = length(segment.getInt(position + 8)) + length(segment.getInt(position + 12))
+                        + length(segment.getInt(position + 16));
+                break;
+            case CALLBACK_URL_CHANGED:
+                stringBytes = length(segment.getInt(position + 8));
+                break;
+            case FIGURE_TAKEN:
+            case COMMAND_APPLIED:
+            case TICK_FINISHED:
+            case CLEARED:
+            case STATE_RECORDED:
+                stringBytes = 0;
+                break;
+            default:
+                return 0;
+        }
+        int records = 1 + (stringBytes + CONTINUATION_DATA - 1) / CONTINUATION_DATA;
+        if (position + records * RECORD_SIZE > segment.limit()) {
+            return 0;
+        }
+        for (int i = 1; i < records; i++) {
+            if (segment.get(position + i * RECORD_SIZE) != CONTINUATION) {
+                return 0;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return position after the last complete record, a torn record after it is erased
+     */
+    private static int truncateTornTail(ByteBuffer segment) {
+        int position = 0;
+        while (position + RECORD_SIZE <= segment.limit()) {
+            int records = recordsInGroup(segment, position);
+            if (records <= 0) {
+                break;
+            }
+            position += records * RECORD_SIZE;
+        }
+        for (int record = position; record + RECORD_SIZE <= segment.limit() && segment.get(record) != END; record += RECORD_SIZE) {
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                segment.put(record + i, (byte) 0);
+            }
+        }
+        return position;
+    }
+
+    private static byte[] readStrings(ByteBuffer segment, int position, int length) {
+        byte[] strings = new byte[length];
+        int offset = 0;
+        for (int record = position + RECORD_SIZE; offset < length; record += RECORD_SIZE) {
+            int used = Math.min(segment.get(record + 1) & 0xFF, length - offset);
+            for (int i = 0; i < used; i++) {
+                strings[offset + i] = segment.get(record + 2 + i);
+            }
+            offset += used;
+        }
+        return strings;
+    }
+
+    private static String string(byte[] strings, int offset, int length) {
+        return length < 0 ? null : new String(strings, offset, length, UTF8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? NO_STRINGS : value.getBytes(UTF8);
+    }
+
+    private static int length(String value, byte[] bytes) {
+        return value == null ? -1 : bytes.length;
+    }
+
+    private static int segmentOf(long mark) {
+        return (int) (mark >>> 32);
+    }
+
+    private static int positionOf(long mark) {
+        return (int) mark;
+    }
+
+    private static int length(int length) {
+        return Math.max(0, length);
+    }
+
+    private List<Integer> listSegments() {
+        List<Integer> segments = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    segments.add(Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, String.format("journal-%08d.seg", index));
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(index), "rw")) {
+            if (file.length() < segmentSize) {
+                file.setLength(segmentSize);
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        }
+    }
+
+    private MappedByteBuffer mapReadOnly(int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(index), "r")) {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+    }
+}
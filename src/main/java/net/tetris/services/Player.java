@@ -1,9 +1,13 @@
 package net.tetris.services;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
 public class Player {
     private String name;
     private String callbackUrl;
     private PlayerScores scores;
+    private String token;
 
     public Player() {
     }
@@ -30,6 +34,25 @@ public class Player {
         this.name = name;
     }
 
+    /**
+     * Secret the player's bot uses to submit commands and open push channel
+     */
+    public String getToken() {
+        return token;
+    }
+
+    void setToken(String token) {
+        this.token = token;
+    }
+
+    public boolean hasToken(String candidate) {
+        if (token == null || candidate == null) {
+            return false;
+        }
+        Charset utf8 = Charset.forName("UTF-8");
+        return MessageDigest.isEqual(token.getBytes(utf8), candidate.getBytes(utf8));
+    }
+
     @Override
     public String toString() {
         return name;
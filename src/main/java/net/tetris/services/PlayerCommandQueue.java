@@ -0,0 +1,80 @@
+package net.tetris.services;
+
+import net.tetris.dom.Joystick;
+
+/**
+ * Collects player commands arriving from any thread (callback responses, push channels)
+ * and applies them to the game on the tick thread, so the game is never moved concurrently with the next step.
+ */
+public class PlayerCommandQueue implements Joystick {
+    public static final int MAX_COMMANDS_PER_TICK = 32;
+
+    private static final int LEFT = 0;
+    private static final int RIGHT = 1;
+    private static final int ROTATE = 2;
+    private static final int DROP = 3;
+
+    private final int[] types = new int[MAX_COMMANDS_PER_TICK];
+    private final int[] values = new int[MAX_COMMANDS_PER_TICK];
+    private int size;
+
+    @Override
+    public void moveLeft(int delta) {
+        add(LEFT, delta);
+    }
+
+    @Override
+    public void moveRight(int delta) {
+        add(RIGHT, delta);
+    }
+
+    @Override
+    public void drop() {
+        add(DROP, 0);
+    }
+
+    @Override
+    public void rotate(int times) {
+        add(ROTATE, times);
+    }
+
+    private synchronized void add(int type, int value) {
+        if (size == MAX_COMMANDS_PER_TICK) {
+            return;
+        }
+        types[size] = type;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Applies all collected commands in the order they came and clears the queue
+     */
+    public synchronized void applyTo(Joystick joystick) {
+        for (int i = 0; i < size; i++) {
+            switch (types[i]) {
+                case LEFT:
+                    joystick.moveLeft(values[i]);
+                    break;
+                case RIGHT:
+                    joystick.moveRight(values[i]);
+                    break;
+                case ROTATE:
+                    joystick.rotate(values[i]);
+                    break;
+                case DROP:
+                    joystick.drop();
+                    break;
+            }
+        }
+        size = 0;
+    }
+
+    public synchronized void clear() {
+        size = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -11,12 +11,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URLEncoder;
-import java.util.Arrays;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * User: serhiy.zelenin
@@ -28,35 +25,64 @@ public class PlayerController {
 
     private HttpClient client;
     private int timeout;
+    private CallbackCircuitBreaker circuitBreaker = new CallbackCircuitBreaker();
+    private BotChannels botChannels = new BotChannels();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private RoundTripListener roundTripListener;
 
-    public void requestControl(final Player player, Figure.Type type, int x, int y, final Joystick joystick, List<Plot> plots) throws IOException {
-        ContentExchange exchange = new MyContentExchange(joystick, player);
+    /**
+     * @param occupiedRows glass rows as bitmasks, see {@link net.tetris.dom.Glass#getOccupiedRows()}
+     */
+    public void requestControl(final Player player, Figure.Type type, int x, int y, final Joystick joystick, int[] occupiedRows) throws IOException {
+        BotChannel channel = botChannels.getChannel(player.getName());
+        if (channel != null) {
+            channel.sendState(buildState(type, x, y, occupiedRows));
+            return;
+        }
+        if (StringUtils.isBlank(player.getCallbackUrl())) {
+            return;
+        }
+        if (!circuitBreaker.allowRequest(player)) {
+            return;
+        }
+        MyContentExchange exchange = new MyContentExchange(joystick, player, circuitBreaker, inFlight, roundTripListener);
 
         exchange.setMethod("GET");
         String callbackUrl = player.getCallbackUrl().endsWith("/") ? player.getCallbackUrl() : player.getCallbackUrl() + "/";
-        StringBuilder sb = exportGlassState(plots);
 
-        String url = callbackUrl + "?figure=" + type + "&x=" + x + "&y=" + y + "&glass=" + URLEncoder.encode(sb.toString(), "UTF-8");
+        String url = callbackUrl + "?" + buildState(type, x, y, occupiedRows);
         exchange.setURL(url);
-        client.send(exchange);
+        inFlight.incrementAndGet();
+        try {
+            exchange.sending();
+            client.send(exchange);
+        } catch (IOException e) {
+            inFlight.decrementAndGet();
+            circuitBreaker.requestFailed(player, e.toString());
+        }
     }
 
 
-    private StringBuilder exportGlassState(List<Plot> plots) {
-        char[][] glassState = new char[TetrisGame.GLASS_HEIGHT][TetrisGame.GLASS_WIDTH];
-        for (int i = 0; i < TetrisGame.GLASS_HEIGHT; i++) {
-            Arrays.fill(glassState[i], ' ');
-        }
-
-        for (Plot plot : plots) {
-            glassState[plot.getY()][plot.getX()] = '*';
-        }
+    /**
+     * Query string describing current figure and glass state, the same for callback requests and push channels
+     */
+    String buildState(Figure.Type type, int x, int y, int[] occupiedRows) {
+        StringBuilder state = new StringBuilder(40 + TetrisGame.GLASS_WIDTH * TetrisGame.GLASS_HEIGHT);
+        state.append("figure=").append(type).append("&x=").append(x).append("&y=").append(y).append("&glass=");
+        appendGlassState(state, occupiedRows);
+        return state.toString();
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < TetrisGame.GLASS_HEIGHT; i++) {
-            sb.append(glassState[i]);
+    /**
+     * Glass from the bottom row, '*' for an occupied cell and '+', a URL encoded space, for an empty one
+     */
+    private static void appendGlassState(StringBuilder state, int[] occupiedRows) {
+        for (int y = 0; y < TetrisGame.GLASS_HEIGHT; y++) {
+            int row = y < occupiedRows.length ? occupiedRows[y] : 0;
+            for (int x = 0; x < TetrisGame.GLASS_WIDTH; x++) {
+                state.append((row >> (TetrisGame.GLASS_WIDTH - x) & 1) != 0 ? '*' : '+');
+            }
         }
-        return sb;
     }
 
     /**
@@ -68,6 +94,35 @@ public class PlayerController {
         this.timeout = timeout;
     }
 
+    /**
+     * @return callback requests sent and not yet answered, failed or expired
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Forgets the callback state of all players, called when the players are cleared
+     */
+    public void playersCleared() {
+        circuitBreaker.clear();
+    }
+
+    public void setCircuitBreaker(CallbackCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @param roundTripListener notified of every successful callback request, null for none
+     */
+    public void setRoundTripListener(RoundTripListener roundTripListener) {
+        this.roundTripListener = roundTripListener;
+    }
+
+    public void setBotChannels(BotChannels botChannels) {
+        this.botChannels = botChannels;
+    }
+
     public void init() throws Exception {
         client = new HttpClient();
         client.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
@@ -76,57 +131,81 @@ public class PlayerController {
         client.start();
     }
 
+    public interface RoundTripListener {
+        /**
+         * @param nanos from sending the callback request to its complete response
+         */
+        void responded(Player player, long nanos);
+    }
+
     public static class MyContentExchange extends ContentExchange {
+        private static final CommandParser COMMAND_PARSER = new CommandParser();
         private final Joystick joystick;
         private final Player player;
-        private Pattern pattern = Pattern.compile("((left)=(\\d*))|((right)=(\\d*))|((rotate)=(\\d*))|(drop)", Pattern.CASE_INSENSITIVE);
+        private final CallbackCircuitBreaker circuitBreaker;
+        private final AtomicInteger inFlight;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private final RoundTripListener roundTripListener;
+        private long sent;
+
+        public MyContentExchange(Joystick joystick, Player player, CallbackCircuitBreaker circuitBreaker) {
+            this(joystick, player, circuitBreaker, new AtomicInteger(), null);
+        }
 
-        public MyContentExchange(Joystick joystick, Player player) {
+        MyContentExchange(Joystick joystick, Player player, CallbackCircuitBreaker circuitBreaker, AtomicInteger inFlight,
+                          RoundTripListener roundTripListener) {
             this.joystick = joystick;
             this.player = player;
+            this.circuitBreaker = circuitBreaker;
+            this.inFlight = inFlight;
+            this.roundTripListener = roundTripListener;
+        }
+
+        void sending() {
+            sent = System.nanoTime();
         }
 
         protected void onResponseComplete() throws IOException {
+            complete();
+            int status = getResponseStatus();
+            if (status < 200 || status >= 300) {
+                circuitBreaker.requestFailed(player, "response status " + status);
+                return;
+            }
+            circuitBreaker.requestSucceeded(player);
+            if (roundTripListener != null) {
+                roundTripListener.responded(player, System.nanoTime() - sent);
+            }
             String responseContent = this.getResponseContent();
             process(responseContent);
         }
 
+        @Override
+        protected void onConnectionFailed(Throwable x) {
+            complete();
+            circuitBreaker.requestFailed(player, "connection failed: " + x);
+        }
+
+        @Override
+        protected void onException(Throwable x) {
+            complete();
+            circuitBreaker.requestFailed(player, x.toString());
+        }
+
+        @Override
+        protected void onExpire() {
+            complete();
+            circuitBreaker.requestFailed(player, "request expired");
+        }
+
         public void process(String responseContent) {
-            Matcher matcher = pattern.matcher(responseContent);
-            while (matcher.find()) {
-                int groupsCount = matcher.groupCount();
-                for (int i = 0; i <= groupsCount; i++) {
-                    String group = matcher.group(i);
-                    if (null == group) {
-                        continue;
-                    }
-                    if (recognizeCommand(matcher, i, group)) {
-                        break;
-                    }
-                }
-            }
+            COMMAND_PARSER.process(responseContent, joystick, player.getName());
         }
 
-        private boolean recognizeCommand(Matcher matcher, int i, String group) {
-            try {
-                switch (group.toLowerCase()) {
-                    case "left":
-                        joystick.moveLeft(Integer.parseInt(matcher.group(i + 1)));
-                        return true;
-                    case "right":
-                        joystick.moveRight(Integer.parseInt(matcher.group(i + 1)));
-                        return true;
-                    case "rotate":
-                        joystick.rotate(Integer.parseInt(matcher.group(i + 1)));
-                        return true;
-                    case "drop":
-                        joystick.drop();
-                        return true;
-                }
-            } catch (NumberFormatException e) {
-                logger.error("Player " + player.getName() + " sent wrong command", e);
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
             }
-            return false;
         }
     }
 }
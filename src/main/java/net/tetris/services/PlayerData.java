@@ -1,15 +1,33 @@
 package net.tetris.services;
 
+import net.tetris.dom.Figure;
+
+import java.util.Collections;
 import java.util.List;
 
 class PlayerData {
     PlayerData(List<Plot> plots, int score) {
+        this(plots, score, Collections.<Plot>emptyList(), null, 0, 0, 0);
+    }
+
+    PlayerData(List<Plot> plots, int score, List<Plot> droppedPlots,
+               Figure.Type figureType, int figureRotation, int figureX, int figureY) {
         this.plots = plots;
         this.score = score;
+        this.droppedPlots = droppedPlots;
+        this.figureType = figureType;
+        this.figureRotation = figureRotation;
+        this.figureX = figureX;
+        this.figureY = figureY;
     }
 
     private List<Plot> plots;
     private int score;
+    private List<Plot> droppedPlots;
+    private Figure.Type figureType;
+    private int figureRotation;
+    private int figureX;
+    private int figureY;
 
     public List<Plot> getPlots() {
         return plots;
@@ -18,4 +36,27 @@ class PlayerData {
     public int getScore() {
         return score;
     }
+
+    public List<Plot> getDroppedPlots() {
+        return droppedPlots;
+    }
+
+    /**
+     * @return type of the falling figure or null when there is none
+     */
+    public Figure.Type getFigureType() {
+        return figureType;
+    }
+
+    public int getFigureRotation() {
+        return figureRotation;
+    }
+
+    public int getFigureX() {
+        return figureX;
+    }
+
+    public int getFigureY() {
+        return figureY;
+    }
 }
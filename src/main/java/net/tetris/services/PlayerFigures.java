@@ -7,18 +7,36 @@ import java.util.Random;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Draws figures with the generator of {@link Random}, kept here so its state can be saved and restored.
+ */
 public class PlayerFigures implements FigureQueue {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
     private ReadWriteLock lock = new ReentrantReadWriteLock();
     private Figure.Type[] openFigures = null;
-    private Random random = new Random();
+    private long state;
+
+    public PlayerFigures() {
+        this(new Random().nextLong());
+    }
+
+    /**
+     * @param seed same seed and same opened figures give the same figures
+     */
+    public PlayerFigures(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
 
     @Override
     public Figure next() {
-        lock.readLock().lock();
+        lock.writeLock().lock();
         try {
-            return openFigures[random.nextInt(openFigures.length)].createNewFigure();
+            return openFigures[nextInt(openFigures.length)].createNewFigure();
         } finally {
-            lock.readLock().unlock();
+            lock.writeLock().unlock();
         }
     }
 
@@ -31,4 +49,39 @@ public class PlayerFigures implements FigureQueue {
         }
     }
 
+    long getState() {
+        lock.readLock().lock();
+        try {
+            return state;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void setState(long state) {
+        lock.writeLock().lock();
+        try {
+            this.state = state & MASK;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int nextInt(int bound) {
+        if ((bound & -bound) == bound) {
+            return (int) ((bound * (long) nextBits()) >> 31);
+        }
+        int bits;
+        int value;
+        do {
+            bits = nextBits();
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+    private int nextBits() {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> 17);
+    }
 }
@@ -0,0 +1,256 @@
+package net.tetris.services;
+
+import net.tetris.dom.TetrisGame;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Screen of one player at one tick. Keeps the glass cells to compute deltas against the player's previous frames.
+ * Encoded fragments are cached, so every distinct fragment is encoded only once per tick.
+ */
+class PlayerFrame {
+    static final int WIDTH = TetrisGame.GLASS_WIDTH;
+    static final int HEIGHT = TetrisGame.GLASS_HEIGHT;
+
+    private static final byte[][] PLOT_PREFIXES = new byte[PlotColor.values().length][];
+    private static final byte[] PLOTS_START = FrameWriter.ascii(":{\"plots\":[");
+    private static final byte[] SET_START = FrameWriter.ascii(":{\"set\":[");
+    private static final byte[] CLEAR_START = FrameWriter.ascii("],\"clear\":[");
+    private static final byte[] SCORE = FrameWriter.ascii("],\"score\":");
+    private static final byte[] GLASS_START = FrameWriter.ascii(":{\"g\":[");
+    private static final byte[] COLORS_START = FrameWriter.ascii("],\"c\":[");
+    private static final byte[] FIGURE_START = FrameWriter.ascii("],\"f\":[");
+    private static final byte[] COMPACT_SCORE = FrameWriter.ascii("],\"s\":");
+    private static final byte[] HEIGHTS_START = FrameWriter.ascii(":{\"h\":[");
+
+    static {
+        for (PlotColor color : PlotColor.values()) {
+            PLOT_PREFIXES[color.ordinal()] = FrameWriter.ascii("{\"" + color.getName() + "\":[");
+        }
+    }
+
+    private final String name;
+    private final long sequence;
+    private final PlayerData data;
+    private final byte[] cells;
+    private final ScreenHistory.Entry[] previous;
+    private byte[] fullFragment;
+    private Map<Long, byte[]> deltaFragments;
+    private byte[] compactFragment;
+    private byte[] thumbnailFragment;
+
+    PlayerFrame(String name, long sequence, PlayerData data, ScreenHistory.Entry[] previous) {
+        this.name = name;
+        this.sequence = sequence;
+        this.data = data;
+        this.previous = previous;
+        this.cells = toCells(data.getPlots());
+    }
+
+    private static byte[] toCells(List<Plot> plots) {
+        byte[] cells = new byte[WIDTH * HEIGHT];
+        for (Plot plot : plots) {
+            if (plot.getX() < 0 || plot.getX() >= WIDTH || plot.getY() < 0 || plot.getY() >= HEIGHT) {
+                continue;
+            }
+            cells[plot.getY() * WIDTH + plot.getX()] = (byte) (plot.getColor().ordinal() + 1);
+        }
+        return cells;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    byte[] getCells() {
+        return cells;
+    }
+
+    int getScore() {
+        return data.getScore();
+    }
+
+    /**
+     * @return <code>"name":{"plots":[...],"score":N}</code>
+     */
+    synchronized byte[] getFullFragment(FrameWriter writer) {
+        if (fullFragment == null) {
+            writer.reset().writeString(name).write(PLOTS_START);
+            boolean first = true;
+            for (Plot plot : data.getPlots()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writePlot(writer, plot.getColor().ordinal(), plot.getX(), plot.getY());
+            }
+            writer.write(SCORE).write(data.getScore()).write('}');
+            fullFragment = writer.toByteArray();
+        }
+        return fullFragment;
+    }
+
+    /**
+     * @return <code>"name":{"set":[...],"clear":[[x,y],...],"score":N}</code> with the cells changed since
+     * the frame with base sequence, or full fragment when that frame is too old or unknown
+     */
+    synchronized byte[] getFragmentSince(long baseSequence, FrameWriter writer) {
+        byte[] base = findCells(baseSequence);
+        if (base == null) {
+            return getFullFragment(writer);
+        }
+        if (deltaFragments == null) {
+            deltaFragments = new HashMap<>();
+        }
+        byte[] fragment = deltaFragments.get(baseSequence);
+        if (fragment == null) {
+            fragment = encodeDelta(base, writer);
+            deltaFragments.put(baseSequence, fragment);
+        }
+        return fragment;
+    }
+
+    private byte[] findCells(long baseSequence) {
+        if (baseSequence <= 0 || baseSequence >= sequence) {
+            return null;
+        }
+        for (ScreenHistory.Entry entry : previous) {
+            if (entry != null && entry.sequence == baseSequence) {
+                return entry.cells;
+            }
+        }
+        return null;
+    }
+
+    private byte[] encodeDelta(byte[] base, FrameWriter writer) {
+        writer.reset().writeString(name).write(SET_START);
+        boolean first = true;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0 && cells[i] != base[i]) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writePlot(writer, cells[i] - 1, i % WIDTH, i / WIDTH);
+            }
+        }
+        writer.write(CLEAR_START);
+        first = true;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] == 0 && base[i] != 0) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write('[').write(i % WIDTH).write(',').write(i / WIDTH).write(']');
+            }
+        }
+        writer.write(SCORE).write(data.getScore()).write('}');
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return <code>"name":{"g":[...],"c":[[color,count],...],"f":[type,rotation,x,y],"s":N}</code>,
+     * see {@link ScreenFormat#COMPACT}
+     */
+    synchronized byte[] getCompactFragment(FrameWriter writer) {
+        if (compactFragment == null) {
+            byte[] dropped = toCells(data.getDroppedPlots());
+            writer.reset().writeString(name).write(GLASS_START);
+            int top = HEIGHT;
+            while (top > 0 && isEmptyRow(dropped, top - 1)) {
+                top--;
+            }
+            for (int y = 0; y < top; y++) {
+                if (y > 0) {
+                    writer.write(',');
+                }
+                int row = 0;
+                for (int x = 0; x < WIDTH; x++) {
+                    if (dropped[y * WIDTH + x] != 0) {
+                        row |= 1 << x;
+                    }
+                }
+                writer.write(row);
+            }
+            writer.write(COLORS_START);
+            writeColorRuns(writer, dropped, top * WIDTH);
+            if (data.getFigureType() != null) {
+                writer.write(FIGURE_START).writeString(data.getFigureType().getName()).write(',')
+                        .write(data.getFigureRotation()).write(',')
+                        .write(data.getFigureX()).write(',')
+                        .write(data.getFigureY());
+            }
+            writer.write(COMPACT_SCORE).write(data.getScore()).write('}');
+            compactFragment = writer.toByteArray();
+        }
+        return compactFragment;
+    }
+
+    /**
+     * @return <code>"name":{"h":[...],"s":N}</code> with the height of every column of dropped figures
+     */
+    synchronized byte[] getThumbnailFragment(FrameWriter writer) {
+        if (thumbnailFragment == null) {
+            int[] heights = new int[WIDTH];
+            for (Plot plot : data.getDroppedPlots()) {
+                if (plot.getX() >= 0 && plot.getX() < WIDTH) {
+                    heights[plot.getX()] = Math.max(heights[plot.getX()], plot.getY() + 1);
+                }
+            }
+            writer.reset().writeString(name).write(HEIGHTS_START);
+            for (int x = 0; x < WIDTH; x++) {
+                if (x > 0) {
+                    writer.write(',');
+                }
+                writer.write(heights[x]);
+            }
+            writer.write(COMPACT_SCORE).write(data.getScore()).write('}');
+            thumbnailFragment = writer.toByteArray();
+        }
+        return thumbnailFragment;
+    }
+
+    private static boolean isEmptyRow(byte[] cells, int y) {
+        for (int x = 0; x < WIDTH; x++) {
+            if (cells[y * WIDTH + x] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeColorRuns(FrameWriter writer, byte[] cells, int length) {
+        int color = 0;
+        int count = 0;
+        boolean first = true;
+        for (int i = 0; i < length; i++) {
+            if (cells[i] == 0) {
+                continue;
+            }
+            if (cells[i] != color && count > 0) {
+                first = writeRun(writer, first, color, count);
+                count = 0;
+            }
+            color = cells[i];
+            count++;
+        }
+        if (count > 0) {
+            writeRun(writer, first, color, count);
+        }
+    }
+
+    private static boolean writeRun(FrameWriter writer, boolean first, int color, int count) {
+        if (!first) {
+            writer.write(',');
+        }
+        writer.write('[').write(color - 1).write(',').write(count).write(']');
+        return false;
+    }
+
+    private static void writePlot(FrameWriter writer, int color, int x, int y) {
+        writer.write(PLOT_PREFIXES[color]).write(x).write(',').write(y).write(']').write('}');
+    }
+}
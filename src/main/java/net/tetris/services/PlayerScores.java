@@ -6,15 +6,19 @@ import net.tetris.dom.GlassEventListener;
 public class PlayerScores implements GlassEventListener {
 
     private volatile int score;
+    private volatile int lines;
+    private Leaderboard leaderboard;
+    private String playerName;
 
     @Override
     public void glassOverflown() {
         int delta = score - 500;
-        score = delta;
+        setScore(delta);
     }
 
     @Override
     public void linesRemoved(int amount) {
+        lines += amount;
         int delta = 0;
         switch (amount) {
             case 1:
@@ -31,16 +35,43 @@ public class PlayerScores implements GlassEventListener {
                 break;
         }
         delta += score;
-        score = delta;
+        setScore(delta);
     }
 
     @Override
     public void figureDropped(Figure figure) {
         int delta = score + 10;
-        score = delta;
+        setScore(delta);
     }
 
     public int getScore() {
         return score;
     }
+
+    void setScore(int score) {
+        this.score = score;
+        if (leaderboard != null) {
+            leaderboard.update(playerName, score);
+        }
+    }
+
+    /**
+     * Keeps the player's place in the leaderboard up to date with the score
+     */
+    void rankIn(Leaderboard leaderboard, String playerName) {
+        this.leaderboard = leaderboard;
+        this.playerName = playerName;
+        leaderboard.update(playerName, score);
+    }
+
+    /**
+     * @return lines removed since the game started
+     */
+    public int getLines() {
+        return lines;
+    }
+
+    void setLines(int lines) {
+        this.lines = lines;
+    }
 }
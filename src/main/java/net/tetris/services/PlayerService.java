@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -15,67 +16,273 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class PlayerService {
     private static Logger logger = LoggerFactory.getLogger(PlayerService.class);
 
+    /**
+     * Ticks between states of the games written to the journal for {@link GameReplay} to check against
+     */
+    static final int STATE_RECORD_INTERVAL = 10;
+
     @Autowired
     private ScreenSender screenSender;
 
     @Autowired
     private PlayerController playerController;
 
+    @Autowired(required = false)
+    private GameJournal journal = new DisabledGameJournal();
+
+    @Autowired(required = false)
+    private WorldSnapshots snapshots;
+
+    @Autowired(required = false)
+    private ScoreHistory scoreHistory;
+
+    @Autowired(required = false)
+    private Leaderboard leaderboard = new Leaderboard();
+
+    @Autowired(required = false)
+    private TickMetrics metrics = new TickMetrics();
+
     private List<Player> players = new ArrayList<>();
     private List<Glass> glasses = new ArrayList<>();
     private List<TetrisGame> games = new ArrayList<>();
-    private List<GlassEventListener> scores = new ArrayList<>();
+    private List<PlayerScores> scores = new ArrayList<>();
+    private List<PlayerFigures> figureDraws = new ArrayList<>();
+    private List<Levels> levels = new ArrayList<>();
+    private List<PlayerCommandQueue> commandQueues = new ArrayList<>();
+    private List<JournaledFigureQueue> figureQueues = new ArrayList<>();
+    private List<Joystick> journaledGames = new ArrayList<>();
+    private long tick;
 
     private ReadWriteLock lock = new ReentrantReadWriteLock();
+    private SecureRandom tokenGenerator = new SecureRandom();
+
+    public PlayerService() {
+    }
+
+    //for unit test
+    PlayerService(ScreenSender screenSender, PlayerController playerController, GameJournal journal) {
+        this(screenSender, playerController, journal, null);
+    }
 
+    //for unit test
+    PlayerService(ScreenSender screenSender, PlayerController playerController, GameJournal journal,
+                  WorldSnapshots snapshots) {
+        this.screenSender = screenSender;
+        this.playerController = playerController;
+        this.journal = journal;
+        this.snapshots = snapshots;
+    }
 
     public Player addNewPlayer(final String name, final String callbackUrl) {
         lock.writeLock().lock();
         try {
-            PlayerScores playerScores = new PlayerScores();
-            PlayerFigures figuresQueue = new PlayerFigures();
-//            Levels levels = new Levels(new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.L, Figure.Type.J)) ;
-            Levels levels = new Levels(new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I),
-                    new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I, Figure.Type.O),
-                    new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I, Figure.Type.O, Figure.Type.J, Figure.Type.L),
-                    new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I, Figure.Type.O, Figure.Type.J, Figure.Type.L, Figure.Type.S, Figure.Type.Z, Figure.Type.T)
-            );
-
-            TetrisGlass glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT, playerScores, levels);
-            final TetrisGame game = new TetrisGame(figuresQueue, glass);
-            Player player = new Player(name, callbackUrl, playerScores);
-            players.add(player);
-            glasses.add(glass);
-            games.add(game);
-            scores.add(playerScores);
-            return player;
+            String token = newToken();
+            long seed = tokenGenerator.nextLong();
+            journal.playerRegistered(players.size(), name, callbackUrl, token, seed);
+            return createPlayer(name, callbackUrl, token, seed, null);
         } finally {
             lock.writeLock().unlock();
         }
     }
 
-    public void nextStepForAllGames() {
+    /**
+     * @param firstFigure figure the game starts with, or null to draw one
+     */
+    private Player createPlayer(String name, String callbackUrl, String token, long seed, Figure.Type firstFigure) {
+        PlayerScores playerScores = new PlayerScores();
+        PlayerFigures figuresQueue = new PlayerFigures(seed);
+        Levels levels = createLevels(figuresQueue);
+
+        JournaledFigureQueue journaledFigures = new JournaledFigureQueue(figuresQueue, journal, players.size());
+        if (firstFigure != null) {
+            journaledFigures.replay(firstFigure);
+        }
+        TetrisGlass glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT, playerScores, levels, metrics);
+        TetrisGame game = new TetrisGame(journaledFigures, glass);
+        Player player = new Player(name, callbackUrl, playerScores);
+        player.setToken(token);
+        addGame(player, playerScores, figuresQueue, levels, journaledFigures, glass, game);
+        return player;
+    }
+
+    private void restoreGame(SavedGame saved) {
+        PlayerScores playerScores = new PlayerScores();
+        playerScores.setScore(saved.score);
+        playerScores.setLines(saved.lines);
+        PlayerFigures figuresQueue = new PlayerFigures();
+        Levels levels = createLevels(figuresQueue);
+        levels.setCurrentLevel(saved.level);
+        figuresQueue.setState(saved.figuresState);
+
+        JournaledFigureQueue journaledFigures = new JournaledFigureQueue(figuresQueue, journal, players.size());
+        TetrisGlass glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT, playerScores, levels, metrics);
+        glass.setOccupiedRows(saved.occupiedRows);
+        Figure figure = saved.figureType == null ? null : saved.figureType.createNewFigure().rotate(saved.rotation);
+        TetrisGame game = new TetrisGame(journaledFigures, glass, figure, saved.x, saved.y, saved.dropRequested);
+        Player player = new Player(saved.name, saved.callbackUrl, playerScores);
+        player.setToken(saved.token);
+        addGame(player, playerScores, figuresQueue, levels, journaledFigures, glass, game);
+    }
+
+    private void addGame(Player player, PlayerScores playerScores, PlayerFigures figuresQueue, Levels playerLevels,
+                         JournaledFigureQueue journaledFigures, TetrisGlass glass, TetrisGame game) {
+        int index = players.size();
+        playerScores.rankIn(leaderboard, player.getName());
+        players.add(player);
+        glasses.add(glass);
+        games.add(game);
+        scores.add(playerScores);
+        figureDraws.add(figuresQueue);
+        levels.add(playerLevels);
+        commandQueues.add(new PlayerCommandQueue());
+        figureQueues.add(journaledFigures);
+        journaledGames.add(new JournaledJoystick(game, journal, index));
+    }
+
+    private SavedGame saveGame(int index) {
+        Player player = players.get(index);
+        TetrisGame game = games.get(index);
+        SavedGame saved = new SavedGame();
+        saved.name = player.getName();
+        saved.callbackUrl = player.getCallbackUrl();
+        saved.token = player.getToken();
+        saved.score = scores.get(index).getScore();
+        saved.lines = scores.get(index).getLines();
+        saved.level = levels.get(index).getCurrentLevel();
+        saved.figuresState = figureDraws.get(index).getState();
+        saved.occupiedRows = ((TetrisGlass) glasses.get(index)).getOccupiedRows();
+        saved.figureType = game.getCurrentFigureType();
+        saved.rotation = game.getCurrentFigureRotation();
+        saved.x = game.getCurrentFigureX();
+        saved.y = game.getCurrentFigureY();
+        saved.dropRequested = game.isDropRequested();
+        return saved;
+    }
+
+    private void recordScores() {
+        if (scoreHistory == null) {
+            return;
+        }
+        for (int i = 0; i < players.size(); i++) {
+            PlayerScores playerScores = scores.get(i);
+            scoreHistory.record(tick, players.get(i).getName(), playerScores.getScore(), playerScores.getLines());
+        }
+        scoreHistory.tickRecorded(tick);
+    }
+
+    /**
+     * Copies all games for a snapshot, the copy is written off the tick thread
+     */
+    private void saveSnapshotIfDue() {
+        if (snapshots == null || !snapshots.isDue(tick)) {
+            return;
+        }
+        List<SavedGame> saved = new ArrayList<>(players.size());
+        for (int i = 0; i < players.size(); i++) {
+            saved.add(saveGame(i));
+        }
+        snapshots.save(tick, journal.mark(), saved);
+    }
+
+    /**
+     * @return hash of the occupied rows, the same for the live and the replayed glass in the same state
+     */
+    static int glassHash(Glass glass) {
+        return Arrays.hashCode(glass.getOccupiedRows());
+    }
+
+    static Levels createLevels(PlayerFigures figuresQueue) {
+//            Levels levels = new Levels(new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.L, Figure.Type.J)) ;
+        return new Levels(new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I),
+                new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I, Figure.Type.O),
+                new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I, Figure.Type.O, Figure.Type.J, Figure.Type.L),
+                new FigureTypesLevel(figuresQueue, new GlassEvent<>(GlassEvent.Type.LINES_REMOVED, 4), Figure.Type.I, Figure.Type.O, Figure.Type.J, Figure.Type.L, Figure.Type.S, Figure.Type.Z, Figure.Type.T)
+        );
+    }
+
+    /**
+     * Rebuilds players and their games from the latest snapshot and the journal written after it,
+     * called once on startup before the first tick
+     */
+    public void restore() throws IOException {
         lock.writeLock().lock();
         try {
-            for (TetrisGame game : games) {
-                game.nextStep();
+            long started = System.currentTimeMillis();
+            WorldSnapshots.Snapshot snapshot = snapshots == null ? null : snapshots.loadLatest();
+            long mark = 0;
+            if (snapshot != null) {
+                for (SavedGame saved : snapshot.games) {
+                    restoreGame(saved);
+                }
+                tick = snapshot.tick;
+                mark = snapshot.mark;
+            }
+            Replay replay = new Replay();
+            journal.replay(replay, mark);
+            replay.registerPending();
+            if (scoreHistory != null) {
+                List<String> names = new ArrayList<>();
+                for (Player player : players) {
+                    names.add(player.getName());
+                }
+                scoreHistory.retain(names);
+            }
+            if (!players.isEmpty()) {
+                logger.info("Restored " + players.size() + " players at tick " + tick + " in "
+                        + (System.currentTimeMillis() - started) + " ms");
             }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
+    public void nextStepForAllGames() {
+        long started = System.nanoTime();
+        try {
             HashMap<Player, PlayerData> map = new HashMap<>();
-            HashMap<Player, List<Plot>> droppedPlotsMap = new HashMap<>();
+            long phaseStarted = stepAndDispatch(started, map);
+
+            // waits for slow spectators no longer than the send budget, so outside the lock
+            screenSender.sendUpdates(map);
+            metrics.phaseFinished(TickMetrics.Phase.SCREEN_FANOUT, phaseStarted);
+        } finally {
+            metrics.tickFinished(started);
+        }
+    }
+
+    /**
+     * Moves the games under the lock, builds the screens of the watched players into the map
+     * and sends the control requests to the bots
+     *
+     * @return when the bots were dispatched
+     */
+    private long stepAndDispatch(long started, Map<Player, PlayerData> map) {
+        lock.writeLock().lock();
+        try {
+            long phaseStarted = metrics.phaseFinished(TickMetrics.Phase.LOCK_WAIT, started);
+            stepAllGames();
+            phaseStarted = metrics.phaseFinished(TickMetrics.Phase.STEP, phaseStarted);
+            saveSnapshotIfDue();
+            recordScores();
+            phaseStarted = metrics.phaseFinished(TickMetrics.Phase.RECORD, phaseStarted);
+
+            Set<String> watchedPlayers = screenSender.getWatchedPlayers();
             for (int i = 0; i < glasses.size(); i++) {
+                Player player = players.get(i);
+                if (watchedPlayers != null && !watchedPlayers.contains(player.getName())) {
+                    continue;
+                }
+                TetrisGame game = games.get(i);
                 Glass glass = glasses.get(i);
+                List<Plot> droppedPlots = glass.getDroppedPlots();
                 ArrayList<Plot> plots = new ArrayList<>();
                 plots.addAll(glass.getCurrentFigurePlots());
-                List<Plot> droppedPlots = glass.getDroppedPlots();
                 plots.addAll(droppedPlots);
-                Player player = players.get(i);
 
-                map.put(player, new PlayerData(plots, player.getScore()));
-                droppedPlotsMap.put(player, droppedPlots);
+                map.put(player, new PlayerData(plots, player.getScore(), droppedPlots, game.getCurrentFigureType(),
+                        game.getCurrentFigureRotation(), game.getCurrentFigureX(), game.getCurrentFigureY()));
             }
-
-            screenSender.sendUpdates(map);
+            phaseStarted = metrics.phaseFinished(TickMetrics.Phase.FRAME_BUILD, phaseStarted);
 
             for (int i = 0; i < players.size(); i++) {
                 Player player = players.get(i);
@@ -85,17 +292,51 @@ public class PlayerService {
                         continue;
                     }
                     playerController.requestControl(player, game.getCurrentFigureType(), game.getCurrentFigureX(),
-                            game.getCurrentFigureY(), game, droppedPlotsMap.get(player));
+                            game.getCurrentFigureY(), commandQueues.get(i), glasses.get(i).getOccupiedRows());
                 } catch (IOException e) {
                     logger.error("Unable to send control request to player " + player.getName() +
                             " URL: " + player.getCallbackUrl(), e);
                 }
             }
+            return metrics.phaseFinished(TickMetrics.Phase.BOT_DISPATCH, phaseStarted);
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Applies collected commands and moves every game one step, the same way live and on replay
+     */
+    private void stepAllGames() {
+        for (int i = 0; i < games.size(); i++) {
+            TetrisGame game = games.get(i);
+            PlayerCommandQueue commands = commandQueues.get(i);
+            if (game.getCurrentFigureType() != null) {
+                commands.applyTo(journaledGames.get(i));
+            } else {
+                commands.clear();
+            }
+            game.nextStep();
+        }
+        tick++;
+        journal.tickFinished(tick);
+        if (tick % STATE_RECORD_INTERVAL == 0) {
+            for (int i = 0; i < glasses.size(); i++) {
+                journal.stateRecorded(i, glassHash(glasses.get(i)), scores.get(i).getScore());
+            }
+        }
+        leaderboard.publish(tick);
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[16];
+        tokenGenerator.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return token.toString();
+    }
 
     public List<Player> getPlayers() {
         lock.readLock().lock();
@@ -106,6 +347,29 @@ public class PlayerService {
         }
     }
 
+    /**
+     * @return copy of at most limit players starting with the offset in registration order
+     */
+    public List<Player> getPlayers(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            int from = Math.min(Math.max(0, offset), players.size());
+            int to = Math.min(players.size(), from + Math.max(0, limit));
+            return new ArrayList<>(players.subList(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getPlayersCount() {
+        lock.readLock().lock();
+        try {
+            return players.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public boolean alreadyRegistered(String playerName) {
         lock.readLock().lock();
         try {
@@ -129,11 +393,56 @@ public class PlayerService {
         }
     }
 
+    /**
+     * @return joystick collecting commands of the player until the next step, or null when player is not registered
+     */
+    public Joystick getJoystick(String playerName) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < players.size(); i++) {
+                if (players.get(i).getName().equals(playerName)) {
+                    return commandQueues.get(i);
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * State of the player's game in the same format as sent to the player's callback URL
+     *
+     * @return state or empty string when there is no figure in the glass
+     */
+    public String getBotState(String playerName) throws IOException {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < players.size(); i++) {
+                if (!players.get(i).getName().equals(playerName)) {
+                    continue;
+                }
+                TetrisGame game = games.get(i);
+                Figure.Type type = game.getCurrentFigureType();
+                if (type == null) {
+                    return "";
+                }
+                return playerController.buildState(type, game.getCurrentFigureX(), game.getCurrentFigureY(),
+                        glasses.get(i).getOccupiedRows());
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     public void updatePlayer(Player player) {
         lock.writeLock().lock();
         try {
-            for (Player playerToUpdate : players) {
+            for (int i = 0; i < players.size(); i++) {
+                Player playerToUpdate = players.get(i);
                 if (playerToUpdate.getName().equals(player.getName())) {
+                    journal.callbackUrlChanged(i, player.getCallbackUrl());
                     playerToUpdate.setCallbackUrl(player.getCallbackUrl());
                     return;
                 }
@@ -146,15 +455,112 @@ public class PlayerService {
     public void clear() {
         lock.writeLock().lock();
         try {
-            players.clear();
-            games.clear();
-            glasses.clear();
+            journal.cleared();
+            clearPlayers();
+            playerController.playersCleared();
+            if (scoreHistory != null) {
+                scoreHistory.clear();
+            }
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    private void clearPlayers() {
+        players.clear();
+        games.clear();
+        glasses.clear();
+        scores.clear();
+        figureDraws.clear();
+        levels.clear();
+        leaderboard.clear();
+        commandQueues.clear();
+        figureQueues.clear();
+        journaledGames.clear();
+    }
+
     List<Glass> getGlasses() {
         return glasses;
     }
+
+    long getTick() {
+        return tick;
+    }
+
+    /**
+     * Applies journaled events. Commands wait in the players' queues and figures in their figure queues
+     * until the tick they were applied at, then the tick runs exactly like it did live.
+     */
+    private class Replay implements GameEvents {
+        private int pendingPlayer = -1;
+        private String pendingName;
+        private String pendingCallbackUrl;
+        private String pendingToken;
+        private long pendingSeed;
+
+        @Override
+        public void playerRegistered(int player, String name, String callbackUrl, String token, long seed) {
+            registerPending();
+            pendingPlayer = player;
+            pendingName = name;
+            pendingCallbackUrl = callbackUrl;
+            pendingToken = token;
+            pendingSeed = seed;
+        }
+
+        @Override
+        public void figureTaken(int player, Figure.Type type) {
+            if (player == pendingPlayer) {
+                register(type);
+            } else if (player < figureQueues.size()) {
+                figureQueues.get(player).replay(type);
+            }
+        }
+
+        @Override
+        public void callbackUrlChanged(int player, String callbackUrl) {
+            registerPending();
+            if (player < players.size()) {
+                players.get(player).setCallbackUrl(callbackUrl);
+            }
+        }
+
+        @Override
+        public void commandApplied(int player, int command, int value) {
+            registerPending();
+            if (player < commandQueues.size()) {
+                JournaledJoystick.apply(command, value, commandQueues.get(player));
+            }
+        }
+
+        @Override
+        public void tickFinished(long finishedTick) {
+            registerPending();
+            stepAllGames();
+            tick = finishedTick;
+        }
+
+        @Override
+        public void stateRecorded(int player, int glassHash, int score) {
+        }
+
+        @Override
+        public void cleared() {
+            pendingPlayer = -1;
+            clearPlayers();
+        }
+
+        void registerPending() {
+            if (pendingPlayer >= 0) {
+                register(null);
+            }
+        }
+
+        private void register(Figure.Type firstFigure) {
+            if (pendingPlayer == players.size()) {
+                createPlayer(pendingName, pendingCallbackUrl, pendingToken, pendingSeed, firstFigure);
+            }
+            pendingPlayer = -1;
+        }
+    }
 }
@@ -1,11 +1,5 @@
 package net.tetris.services;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializerProvider;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import net.tetris.web.controller.UpdateRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,115 +8,586 @@ import org.springframework.stereotype.Component;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * User: serhiy.zelenin
  * Date: 5/9/12
  * Time: 6:14 PM
+ * <p/>
+ * Tick waits for the frames to be written no longer than the send budget, outside the game lock. Every stream
+ * has at most one frame in flight: while the previous write is still blocked, later frames are skipped and the next
+ * frame written is based on the last frame the client got (a full frame in the compact format, a delta in
+ * the plots one). Streams of clients accepting gzip are compressed with a sync flush after every event, so each
+ * event can be decoded as soon as it arrives. Streams stuck in a write longer than
+ * the write timeout, or skipping too many frames in a row, are dropped. Streams over the bound are answered with 503.
+ * Streams not written to for the heartbeat interval get a heartbeat from the reaper, so streams of gone clients
+ * are found and dropped while the game is paused too, and streams open longer than the stream timeout are closed
+ * for the client to reconnect.
+ * <p/>
+ * Long poll responses in flight are bounded too: over the bound, due requests wait in the queue for a later tick
+ * (and are reaped if they wait too long), and responses not written within the write timeout are abandoned.
+ * <p/>
+ * Writes are handed off to an idle or a new thread of the executor instead of being queued behind blocked ones,
+ * so clients not reading their responses hold only their own threads. Abandoned writes and dropped streams
+ * stop counting against the bounds, but their responses are completed by the writer thread once
+ * the blocked write returns, never while it is still writing.
+ * <p/>
+ * Waiting requests are indexed by player name, so matching them with the screens of a tick
+ * costs the number of subscriptions, not requests times players. Screens are built only for the players
+ * reported by {@link #getWatchedPlayers()}; requests scheduled after that wait in the queue for the next tick
+ * instead of being answered without their screens.
+ * <p/>
+ * Pending requests wait in a bounded lock-free queue. Requests over the bound are answered with 503,
+ * a newer request of the same client supersedes the older one, and requests not answered within
+ * the pending timeout are reaped with 204.
+ * <p/>
+ * Clients asking for every N-th frame only are served on ticks with sequence divisible by N, so all
+ * clients with the same format share the bytes of the same frame.
  */
 @Component
 public class RestScreenSender implements ScreenSender {
+    private static final byte[] EVENT_DATA = FrameWriter.ascii("\ndata: ");
+    private static final byte[] EVENT_END = FrameWriter.ascii("\n\n");
+    private static final byte[] HEARTBEAT = FrameWriter.ascii(":\n\n");
+
+    private final Queue<UpdateRequest> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ConcurrentMap<String, UpdateRequest> pendingByClient = new ConcurrentHashMap<>();
+
+    /**
+     * Requests taken from the pending queue for the current tick, indexed by player name
+     */
     private List<UpdateRequest> requests = new ArrayList<>();
-    private final ObjectMapper objectMapper;
+    private Map<String, List<UpdateRequest>> requestsByPlayer = new HashMap<>();
+    private List<UpdateRequest> allPlayersRequests = new ArrayList<>();
+    private boolean watchedReported;
+    private List<Subscriber> streams = new CopyOnWriteArrayList<>();
+    private final AtomicInteger streamCount = new AtomicInteger();
+    private final ConcurrentMap<UpdateRequest, PlayerScreenSendCallable> writes = new ConcurrentHashMap<>();
+    private final ScreenHistory history = new ScreenHistory();
+    private long sequence;
 
+    private long sendBudget = 1000;
+    private long writeTimeout = 10000;
+    private int maxSkippedFrames = 30;
+    private int maxPendingRequests = 10000;
+    private long pendingTimeout = 30000;
+    private int maxWritesInFlight = 1000;
+    private int maxStreams = 1000;
+    private long heartbeatInterval = 5000;
+    private long streamTimeout = 600000;
 
-    private ScheduledExecutorService restSenderExecutorService;
+    private ExecutorService restSenderExecutorService;
 
     private static Logger logger = LoggerFactory.getLogger(RestScreenSender.class);
 
     @Autowired
-    public RestScreenSender(ScheduledExecutorService restSenderExecutorService) {
+    public RestScreenSender(ExecutorService restSenderExecutorService) {
         this.restSenderExecutorService = restSenderExecutorService;
-        objectMapper = new ObjectMapper();
-        SimpleModule module = new SimpleModule();
-        module.addSerializer(new StdSerializer<Plot>(Plot.class) {
-            @Override
-            public void serialize(Plot value, JsonGenerator jgen, SerializerProvider provider) throws IOException, JsonGenerationException {
-                jgen.writeStartObject();
-                jgen.writeArrayFieldStart(value.getColor().getName());
-                jgen.writeNumber(value.getX());
-                jgen.writeNumber(value.getY());
-                jgen.writeEndArray();
-                jgen.writeEndObject();
-            }
-        });
-        objectMapper.registerModule(module);
     }
 
     @Override
-    public synchronized void scheduleUpdate(UpdateRequest updateRequest) {
-        requests.add(updateRequest);
+    public void scheduleUpdate(UpdateRequest updateRequest) {
+        if (pendingCount.incrementAndGet() > maxPendingRequests) {
+            pendingCount.decrementAndGet();
+            updateRequest.finish();
+            finish(updateRequest, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        updateRequest.setScheduledAt(now());
+        if (updateRequest.getClientId() != null) {
+            UpdateRequest previous = pendingByClient.put(updateRequest.getClientId(), updateRequest);
+            if (previous != null && claim(previous)) {
+                finish(previous, HttpServletResponse.SC_NO_CONTENT);
+            }
+        }
+        pending.add(updateRequest);
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Completes pending requests waiting longer than the pending timeout, so a paused game
+     * doesn't keep spectators' connections forever
+     */
+    @Override
+    public void reapExpiredRequests() {
+        abandonBlockedWrites(now());
+        sendHeartbeats(now());
+        long expired = now() - pendingTimeout;
+        int reaped = 0;
+        for (Iterator<UpdateRequest> iterator = pending.iterator(); iterator.hasNext(); ) {
+            UpdateRequest updateRequest = iterator.next();
+            if (updateRequest.isFinished()) {
+                iterator.remove();
+            } else if (updateRequest.getScheduledAt() <= expired && claim(updateRequest)) {
+                iterator.remove();
+                finish(updateRequest, HttpServletResponse.SC_NO_CONTENT);
+                reaped++;
+            }
+        }
+        if (reaped > 0) {
+            logger.debug("Reaped " + reaped + " expired screen requests");
+        }
     }
 
+    @Override
+    public void subscribe(UpdateRequest stream) {
+        if (streamCount.incrementAndGet() > maxStreams) {
+            streamCount.decrementAndGet();
+            finish(stream, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        streams.add(new Subscriber(stream, now()));
+    }
+
+    @Override
+    public synchronized Set<String> getWatchedPlayers() {
+        takePending();
+        watchedReported = true;
+        long next = sequence + 1;
+        for (UpdateRequest request : allPlayersRequests) {
+            if (request.isDue(next)) {
+                return null;
+            }
+        }
+        Set<String> watched = new HashSet<>();
+        for (Map.Entry<String, List<UpdateRequest>> entry : requestsByPlayer.entrySet()) {
+            for (UpdateRequest request : entry.getValue()) {
+                if (request.isDue(next)) {
+                    watched.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        for (Subscriber subscriber : streams) {
+            if (!subscriber.stream.isDue(next)) {
+                continue;
+            }
+            if (subscriber.stream.isForAllPlayers()) {
+                return null;
+            }
+            watched.addAll(subscriber.stream.getPlayersToUpdate());
+        }
+        return watched;
+    }
 
     @Override
     public synchronized void sendUpdates(final Map<Player, PlayerData> playerScreens) {
-        List<Callable<Void>> tasks = new ArrayList<>();
+        sequence++;
+        if (!watchedReported) {
+            takePending();
+        }
+        watchedReported = false;
+        if (requests.isEmpty() && streams.isEmpty()) {
+            return;
+        }
+        ScreenFrames frames = new ScreenFrames(sequence, playerScreens, history);
+        List<Future<Void>> sent = new ArrayList<>();
+        long now = now();
+        abandonBlockedWrites(now);
 
-        for (final UpdateRequest updateRequest : requests) {
-            tasks.add(new PlayerScreenSendCallable(updateRequest, playerScreens));
+        Set<UpdateRequest> subscribed = findSubscribedRequests(playerScreens.keySet());
+        for (UpdateRequest updateRequest : requests) {
+            if (!updateRequest.isDue(sequence)) {
+                pending.add(updateRequest);
+            } else if (subscribed.contains(updateRequest) && writes.size() >= maxWritesInFlight) {
+                pending.add(updateRequest);
+            } else if (!claim(updateRequest)) {
+                continue;
+            } else if (subscribed.contains(updateRequest)) {
+                PlayerScreenSendCallable write = new PlayerScreenSendCallable(updateRequest, frames, now);
+                writes.put(updateRequest, write);
+                try {
+                    sent.add(restSenderExecutorService.submit(write));
+                } catch (RejectedExecutionException e) {
+                    writes.remove(updateRequest, write);
+                    logger.warn("No thread left to send screen update, answering without it: " + e);
+                    finish(updateRequest, HttpServletResponse.SC_NO_CONTENT);
+                }
+            } else {
+                finish(updateRequest, HttpServletResponse.SC_OK);
+            }
+        }
+        for (Subscriber subscriber : streams) {
+            if (subscriber.stream.isDue(sequence) && subscriber.startWrite(now)) {
+                Future<Void> write = writeStream(subscriber, frames);
+                if (write != null) {
+                    sent.add(write);
+                }
+            }
         }
+        requests.clear();
+        requestsByPlayer.clear();
+        allPlayersRequests.clear();
 
+        long deadline = now + sendBudget;
         try {
-            restSenderExecutorService.invokeAll(tasks, 10, TimeUnit.SECONDS);
+            for (Future<Void> future : sent) {
+                future.get(Math.max(0, deadline - now()), TimeUnit.MILLISECONDS);
+            }
         } catch (InterruptedException e) {
             logger.error("Interrupted while waiting for all glass data to be sent on client.", e);
+        } catch (TimeoutException e) {
+            logger.debug("Screen updates are not sent within " + sendBudget + "ms, leaving slow clients behind");
+        } catch (ExecutionException e) {
+            logger.error("Unable to send screen updates", e);
         }
-        requests.clear();
     }
 
+    /**
+     * Releases the places of long poll responses not written within the write timeout. The responses are
+     * completed by their writer threads when the blocked writes return
+     */
+    private void abandonBlockedWrites(long now) {
+        for (PlayerScreenSendCallable write : writes.values()) {
+            if (now - write.started > writeTimeout && writes.remove(write.updateRequest, write)) {
+                logger.debug("Screen response abandoned: write blocked for " + (now - write.started) + "ms");
+            }
+        }
+    }
 
+    /**
+     * Writes heartbeats to streams with no write started within the heartbeat interval. A stream still blocked
+     * in its previous write skips the heartbeat and is dropped once blocked longer than the write timeout
+     */
+    private void sendHeartbeats(long now) {
+        for (Subscriber subscriber : streams) {
+            if (now - subscriber.subscribedAt > streamTimeout) {
+                drop(subscriber, "open for " + (now - subscriber.subscribedAt) + "ms");
+            } else if (now - subscriber.getWriteStarted() >= heartbeatInterval && subscriber.startWrite(now)) {
+                writeStream(subscriber, null);
+            }
+        }
+    }
 
-    private void sendUpdateForRequest(Map<Player, PlayerData> playerScreens, UpdateRequest updateRequest) {
-        AsyncContext asyncContext = updateRequest.getAsyncContext();
-        ServletResponse response = asyncContext.getResponse();
+    /**
+     * @param frames frames of the tick, or null for a heartbeat
+     * @return null when the stream is dropped because there is no thread left to write
+     */
+    private Future<Void> writeStream(Subscriber subscriber, ScreenFrames frames) {
         try {
-            PrintWriter writer = response.getWriter();
-            objectMapper.writeValue(writer, playerScreens);
+            return restSenderExecutorService.submit(new StreamSendCallable(subscriber, frames));
+        } catch (RejectedExecutionException e) {
+            subscriber.writeFinished();
+            drop(subscriber, "no thread left to write: " + e);
+            return null;
+        }
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        } finally {
+    /**
+     * Moves pending requests to the index of the current tick
+     */
+    private void takePending() {
+        for (UpdateRequest updateRequest = pending.poll(); updateRequest != null; updateRequest = pending.poll()) {
+            if (updateRequest.isFinished()) {
+                continue;
+            }
+            requests.add(updateRequest);
+            if (updateRequest.isForAllPlayers()) {
+                allPlayersRequests.add(updateRequest);
+                continue;
+            }
+            for (String playerName : updateRequest.getPlayersToUpdate()) {
+                List<UpdateRequest> subscribers = requestsByPlayer.get(playerName);
+                if (subscribers == null) {
+                    subscribers = new ArrayList<>();
+                    requestsByPlayer.put(playerName, subscribers);
+                }
+                subscribers.add(updateRequest);
+            }
+        }
+    }
+
+    /**
+     * @return false when the request is already answered, superseded or reaped
+     */
+    private boolean claim(UpdateRequest updateRequest) {
+        if (!updateRequest.finish()) {
+            return false;
+        }
+        pendingCount.decrementAndGet();
+        if (updateRequest.getClientId() != null) {
+            pendingByClient.remove(updateRequest.getClientId(), updateRequest);
+        }
+        return true;
+    }
+
+    private void finish(UpdateRequest updateRequest, int status) {
+        try {
+            AsyncContext asyncContext = updateRequest.getAsyncContext();
+            if (status != HttpServletResponse.SC_OK && asyncContext.getResponse() instanceof HttpServletResponse) {
+                ((HttpServletResponse) asyncContext.getResponse()).setStatus(status);
+            }
             asyncContext.complete();
+        } catch (IllegalStateException e) {
+            logger.debug("Screen request is already completed: " + e);
+        }
+    }
+
+    /**
+     * @return waiting requests with a screen of at least one of the players
+     */
+    private Set<UpdateRequest> findSubscribedRequests(Set<Player> players) {
+        Set<UpdateRequest> subscribed = Collections.newSetFromMap(new IdentityHashMap<UpdateRequest, Boolean>());
+        if (players.isEmpty()) {
+            return subscribed;
+        }
+        subscribed.addAll(allPlayersRequests);
+        if (requestsByPlayer.isEmpty()) {
+            return subscribed;
+        }
+        for (Player player : players) {
+            List<UpdateRequest> subscribers = requestsByPlayer.get(player.getName());
+            if (subscribers != null) {
+                subscribed.addAll(subscribers);
+            }
+        }
+        return subscribed;
+    }
+
+    /**
+     * @param maxWritesInFlight long poll responses queued or being written, due requests over it wait for a later tick
+     */
+    public void setMaxWritesInFlight(int maxWritesInFlight) {
+        this.maxWritesInFlight = maxWritesInFlight;
+    }
+
+    /**
+     * @param maxStreams open streams, streams over it are answered with 503
+     */
+    public void setMaxStreams(int maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * @param heartbeatInterval milliseconds a stream goes without a write before it gets a heartbeat
+     */
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * @param streamTimeout milliseconds a stream stays open, the client reconnects with the id of its last event
+     */
+    public void setStreamTimeout(long streamTimeout) {
+        this.streamTimeout = streamTimeout;
+    }
+
+    public void setMaxPendingRequests(int maxPendingRequests) {
+        this.maxPendingRequests = maxPendingRequests;
+    }
+
+    /**
+     * @param pendingTimeout milliseconds a request waits for a screen before it is answered with no content
+     */
+    public void setPendingTimeout(long pendingTimeout) {
+        this.pendingTimeout = pendingTimeout;
+    }
+
+    public void setSendBudget(long sendBudget) {
+        this.sendBudget = sendBudget;
+    }
+
+    public void setWriteTimeout(long writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
+    public void setMaxSkippedFrames(int maxSkippedFrames) {
+        this.maxSkippedFrames = maxSkippedFrames;
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void sendUpdateForRequest(ScreenFrames frames, UpdateRequest updateRequest) {
+        try {
+            ServletResponse response = updateRequest.getAsyncContext().getResponse();
+            response.setContentType("application/json;charset=UTF-8");
+            if (updateRequest.isGzipAccepted() && response instanceof HttpServletResponse) {
+                byte[] body = frames.getGzippedBody(updateRequest);
+                ((HttpServletResponse) response).setHeader("Content-Encoding", "gzip");
+                ((HttpServletResponse) response).setHeader("Vary", "Accept-Encoding");
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+            } else {
+                frames.writeTo(response.getOutputStream(), updateRequest);
+            }
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Unable to send screen update: " + e);
+        } finally {
+            finish(updateRequest, HttpServletResponse.SC_OK);
+        }
+    }
+
+    private void drop(Subscriber subscriber, String reason) {
+        if (streams.remove(subscriber)) {
+            streamCount.decrementAndGet();
+            logger.debug("Screen stream closed: " + reason);
+        }
+        if (subscriber.close()) {
+            complete(subscriber);
+        }
+    }
+
+    private void complete(Subscriber subscriber) {
+        try {
+            subscriber.stream.getAsyncContext().complete();
+        } catch (IllegalStateException ignored) {
+            // already completed by the container
+        }
+    }
+
+    /**
+     * Stream connection with at most one frame in flight
+     */
+    private class Subscriber {
+        private final UpdateRequest stream;
+        private final long subscribedAt;
+        private boolean writing;
+        private boolean closed;
+        private long writeStarted;
+        private int skippedFrames;
+        /**
+         * Compressor keeping its state from event to event, used by the thread of the frame in flight only
+         */
+        private GZIPOutputStream gzip;
+
+        Subscriber(UpdateRequest stream, long subscribedAt) {
+            this.stream = stream;
+            this.subscribedAt = subscribedAt;
+            this.writeStarted = subscribedAt;
+        }
+
+        synchronized long getWriteStarted() {
+            return writeStarted;
+        }
+
+        /**
+         * @return output of the stream, gzipped when the client accepts it. Headers go with the first write
+         */
+        OutputStream getOutputStream(ServletResponse response) throws IOException {
+            if (!stream.isGzipAccepted() || !(response instanceof HttpServletResponse)) {
+                return response.getOutputStream();
+            }
+            if (gzip == null) {
+                ((HttpServletResponse) response).setHeader("Content-Encoding", "gzip");
+                ((HttpServletResponse) response).setHeader("Vary", "Accept-Encoding");
+                gzip = new GZIPOutputStream(response.getOutputStream(), true);
+            }
+            return gzip;
+        }
+
+        /**
+         * @return false when the frame is skipped because the previous one is still being written
+         */
+        boolean startWrite(long now) {
+            String dropReason;
+            synchronized (this) {
+                if (!writing) {
+                    writing = true;
+                    writeStarted = now;
+                    return true;
+                }
+                skippedFrames++;
+                if (now - writeStarted > writeTimeout) {
+                    dropReason = "write blocked for " + (now - writeStarted) + "ms";
+                } else if (skippedFrames > maxSkippedFrames) {
+                    dropReason = skippedFrames + " frames skipped";
+                } else {
+                    return false;
+                }
+            }
+            drop(this, dropReason);
+            return false;
+        }
+
+        /**
+         * @return true when the stream is dropped while the frame was being written and is to be completed now
+         */
+        synchronized boolean writeFinished() {
+            writing = false;
+            skippedFrames = 0;
+            return closed;
+        }
+
+        /**
+         * @return false when a frame is being written, the writer completes the stream when it returns
+         */
+        synchronized boolean close() {
+            closed = true;
+            return !writing;
+        }
+    }
+
+    private class StreamSendCallable implements Callable<Void> {
+        private final Subscriber subscriber;
+        private final ScreenFrames frames;
+
+        public StreamSendCallable(Subscriber subscriber, ScreenFrames frames) {
+            this.subscriber = subscriber;
+            this.frames = frames;
+        }
+
+        @Override
+        public Void call() {
+            UpdateRequest stream = subscriber.stream;
+            try {
+                ServletResponse response = stream.getAsyncContext().getResponse();
+                OutputStream out = subscriber.getOutputStream(response);
+                if (frames != null && frames.hasScreensFor(stream)) {
+                    out.write(FrameWriter.ascii("id: " + frames.getSequence()));
+                    out.write(EVENT_DATA);
+                    frames.writeTo(out, stream);
+                    out.write(EVENT_END);
+                    stream.setLastSequence(frames.getSequence());
+                } else {
+                    out.write(HEARTBEAT);
+                }
+                out.flush();
+                response.flushBuffer();
+            } catch (Exception e) {
+                drop(subscriber, e.toString());
+            } finally {
+                if (subscriber.writeFinished()) {
+                    complete(subscriber);
+                }
+            }
+            return null;
         }
     }
 
     private class PlayerScreenSendCallable implements Callable<Void> {
         private final UpdateRequest updateRequest;
-        private final Map<Player, PlayerData> playerData;
-        private int score;
+        private final ScreenFrames frames;
+        private final long started;
 
-        public PlayerScreenSendCallable(UpdateRequest updateRequest, Map<Player, PlayerData> playerData) {
+        public PlayerScreenSendCallable(UpdateRequest updateRequest, ScreenFrames frames, long started) {
             this.updateRequest = updateRequest;
-            this.playerData = playerData;
+            this.frames = frames;
+            this.started = started;
         }
 
         @Override
         public Void call() {
-            Map<Player, PlayerData> playersToUpdate = findScreensFor(updateRequest, playerData);
-            if (playersToUpdate.isEmpty()) {
-                updateRequest.getAsyncContext().complete();
-                return null;
+            try {
+                sendUpdateForRequest(frames, updateRequest);
+            } finally {
+                writes.remove(updateRequest, this);
             }
-            sendUpdateForRequest(playersToUpdate, updateRequest);
             return null;
         }
-
-        private Map<Player, PlayerData> findScreensFor(UpdateRequest updateRequest, Map<Player, PlayerData> playerData) {
-                HashMap<Player, PlayerData> result = new HashMap<>();
-                for (Map.Entry<Player, PlayerData> entry : playerData.entrySet()) {
-                    if (updateRequest.isForAllPlayers() ||
-                            updateRequest.getPlayersToUpdate().contains(entry.getKey().getName())) {
-                        result.put(entry.getKey(), entry.getValue());
-                    }
-                }
-                return result;
-            }
-
     }
 
 }
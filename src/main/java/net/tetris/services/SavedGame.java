@@ -0,0 +1,70 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Copy of the state of one game, taken on the tick thread and written to snapshots later
+ */
+class SavedGame {
+    String name;
+    String callbackUrl;
+    String token;
+    int score;
+    int lines;
+    int level;
+    long figuresState;
+    int[] occupiedRows;
+    Figure.Type figureType;
+    int rotation;
+    int x;
+    int y;
+    boolean dropRequested;
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeBoolean(callbackUrl != null);
+        if (callbackUrl != null) {
+            out.writeUTF(callbackUrl);
+        }
+        out.writeUTF(token);
+        out.writeInt(score);
+        out.writeInt(lines);
+        out.writeByte(level);
+        out.writeLong(figuresState);
+        out.writeByte(occupiedRows.length);
+        for (int row : occupiedRows) {
+            out.writeShort(row);
+        }
+        out.writeByte(figureType == null ? -1 : figureType.ordinal());
+        out.writeByte(rotation);
+        out.writeByte(x);
+        out.writeByte(y);
+        out.writeBoolean(dropRequested);
+    }
+
+    static SavedGame readFrom(DataInput in) throws IOException {
+        SavedGame game = new SavedGame();
+        game.name = in.readUTF();
+        game.callbackUrl = in.readBoolean() ? in.readUTF() : null;
+        game.token = in.readUTF();
+        game.score = in.readInt();
+        game.lines = in.readInt();
+        game.level = in.readByte();
+        game.figuresState = in.readLong();
+        game.occupiedRows = new int[in.readByte()];
+        for (int i = 0; i < game.occupiedRows.length; i++) {
+            game.occupiedRows[i] = in.readUnsignedShort();
+        }
+        int type = in.readByte();
+        game.figureType = type < 0 ? null : Figure.Type.values()[type];
+        game.rotation = in.readByte();
+        game.x = in.readByte();
+        game.y = in.readByte();
+        game.dropRequested = in.readBoolean();
+        return game;
+    }
+}
@@ -0,0 +1,400 @@
+package net.tetris.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Score and removed lines of every player over time, in fixed memory: about 9.5 KB per player,
+ * for at most <code>maxPlayers</code> players. Players over the bound get no history; history of players
+ * no longer registered is dropped when the players are cleared or restored, never on the tick.
+ * <p/>
+ * Every player has one ring of buckets per resolution: ticks, minutes and hours (60 and 3600 ticks).
+ * Every tick is written into all rings, a bucket keeps the last values of its ticks, so coarser rings
+ * are always rolled up and a range is read from the finest ring that still holds it, never from raw ticks.
+ * <p/>
+ * Persisted to <code>scores.bin</code> every <code>saveInterval</code> ticks and on shutdown: int magic,
+ * int version, int number of players, every player as name, first tick and rings, values as zigzag varint deltas.
+ * Not persisted when no directory is set.
+ */
+public class ScoreHistory {
+    static final int[] STEPS = {1, 60, 3600};
+    static final int[] CAPACITIES = {300, 720, 168};
+    static final int MAGIC = 0x54534348;
+    static final int VERSION = 1;
+
+    private static Logger logger = LoggerFactory.getLogger(ScoreHistory.class);
+
+    private final ConcurrentMap<String, Series> series = new ConcurrentHashMap<>();
+    private int maxPlayers = 1000;
+    private File directory;
+    private int saveInterval = 60;
+    private ExecutorService writer;
+
+    public void setDirectory(String directory) {
+        this.directory = directory == null || directory.trim().isEmpty() ? null : new File(directory);
+    }
+
+    /**
+     * @param maxPlayers players with history, keeps memory bounded
+     */
+    public void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = maxPlayers;
+    }
+
+    /**
+     * @param saveInterval ticks between writing the history to disk
+     */
+    public void setSaveInterval(int saveInterval) {
+        this.saveInterval = saveInterval;
+    }
+
+    public void init() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create score history directory " + directory);
+        }
+        File file = historyFile();
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                load(in);
+            } catch (IOException e) {
+                logger.error("Unable to load score history from " + file, e);
+            }
+        }
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "score-history-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void destroy() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+        saveToFile();
+    }
+
+    /**
+     * Called on the tick thread for every player every tick
+     */
+    public void record(long tick, String player, int score, int lines) {
+        Series playerSeries = series.get(player);
+        if (playerSeries == null) {
+            if (series.size() >= maxPlayers) {
+                return;
+            }
+            playerSeries = new Series();
+            Series existing = series.putIfAbsent(player, playerSeries);
+            if (existing != null) {
+                playerSeries = existing;
+            }
+        }
+        playerSeries.record(tick, score, lines);
+    }
+
+    /**
+     * Forgets all players, called when the players are cleared
+     */
+    public void clear() {
+        series.clear();
+    }
+
+    /**
+     * Forgets players not in the collection, called when the registered players are restored
+     */
+    public void retain(Collection<String> players) {
+        series.keySet().retainAll(players);
+    }
+
+    /**
+     * Called on the tick thread after all players are recorded
+     */
+    void tickRecorded(long tick) {
+        if (writer == null || writer.isShutdown() || saveInterval <= 0 || tick % saveInterval != 0) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                saveToFile();
+            }
+        });
+    }
+
+    /**
+     * @param maxPoints the finest resolution giving no more points is used
+     * @return last values of buckets from the bucket of tick <code>from</code> to the bucket of tick
+     * <code>to</code>, as far as they are kept, null for an unknown player
+     */
+    public Range query(String player, long from, long to, int maxPoints) {
+        Series playerSeries = series.get(player);
+        if (playerSeries == null) {
+            return null;
+        }
+        return playerSeries.query(from, to, Math.max(1, maxPoints));
+    }
+
+    private void saveToFile() {
+        File temporary = new File(directory, "scores.tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temporary)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                save(out);
+                out.flush();
+                file.getFD().sync();
+            }
+            if (!temporary.renameTo(historyFile())) {
+                throw new IOException("Unable to rename " + temporary + " to " + historyFile());
+            }
+        } catch (IOException e) {
+            logger.error("Unable to save score history", e);
+        }
+    }
+
+    void save(DataOutput out) throws IOException {
+        List<Map.Entry<String, Series>> entries = new ArrayList<>(series.entrySet());
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Series> entry : entries) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    void load(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unknown score history format");
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            Series playerSeries = new Series();
+            playerSeries.readFrom(in);
+            series.put(name, playerSeries);
+        }
+    }
+
+    private File historyFile() {
+        return new File(directory, "scores.bin");
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.writeByte((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.writeByte(zigzag);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static class Range {
+        private final int step;
+        private final long[] ticks;
+        private final int[] scores;
+        private final int[] lines;
+
+        Range(int step, int size) {
+            this.step = step;
+            ticks = new long[size];
+            scores = new int[size];
+            lines = new int[size];
+        }
+
+        /**
+         * @return ticks per point
+         */
+        public int getStep() {
+            return step;
+        }
+
+        public int size() {
+            return ticks.length;
+        }
+
+        /**
+         * @return first tick of the bucket of the point
+         */
+        public long getTick(int point) {
+            return ticks[point];
+        }
+
+        public int getScore(int point) {
+            return scores[point];
+        }
+
+        public int getLines(int point) {
+            return lines[point];
+        }
+    }
+
+    private static class Series {
+        private final Ring[] rings = new Ring[STEPS.length];
+        private long firstTick = -1;
+
+        Series() {
+            for (int i = 0; i < rings.length; i++) {
+                rings[i] = new Ring(STEPS[i], CAPACITIES[i]);
+            }
+        }
+
+        synchronized void record(long tick, int score, int lines) {
+            if (firstTick < 0) {
+                firstTick = tick;
+            }
+            for (Ring ring : rings) {
+                ring.put(tick / ring.step, score, lines);
+            }
+        }
+
+        synchronized Range query(long from, long to, int maxPoints) {
+            from = Math.max(from, firstTick);
+            to = Math.min(to, rings[0].newest);
+            Ring ring = rings[rings.length - 1];
+            for (Ring candidate : rings) {
+                if (candidate.newest >= 0 && from / candidate.step >= candidate.oldest()
+                        && to / candidate.step - from / candidate.step < maxPoints) {
+                    ring = candidate;
+                    break;
+                }
+            }
+            if (ring.newest < 0) {
+                return new Range(ring.step, 0);
+            }
+            long first = Math.max(from / ring.step, ring.oldest());
+            long last = Math.min(to / ring.step, ring.newest);
+            Range range = new Range(ring.step, (int) Math.max(0, last - first + 1));
+            for (int i = 0; i < range.size(); i++) {
+                long bucket = first + i;
+                int slot = ring.slot(bucket);
+                range.ticks[i] = bucket * ring.step;
+                range.scores[i] = ring.scores[slot];
+                range.lines[i] = ring.lines[slot];
+            }
+            return range;
+        }
+
+        synchronized void writeTo(DataOutput out) throws IOException {
+            out.writeLong(firstTick);
+            for (Ring ring : rings) {
+                out.writeLong(ring.newest);
+                if (ring.newest < 0) {
+                    continue;
+                }
+                long oldest = ring.oldest();
+                writeVarint(out, (int) (ring.newest - oldest + 1));
+                int score = 0;
+                int lines = 0;
+                for (long bucket = oldest; bucket <= ring.newest; bucket++) {
+                    int slot = ring.slot(bucket);
+                    writeVarint(out, ring.scores[slot] - score);
+                    writeVarint(out, ring.lines[slot] - lines);
+                    score = ring.scores[slot];
+                    lines = ring.lines[slot];
+                }
+            }
+        }
+
+        synchronized void readFrom(DataInput in) throws IOException {
+            firstTick = in.readLong();
+            for (Ring ring : rings) {
+                long newest = in.readLong();
+                if (newest < 0) {
+                    continue;
+                }
+                int count = readVarint(in);
+                int score = 0;
+                int lines = 0;
+                for (long bucket = newest - count + 1; bucket <= newest; bucket++) {
+                    score += readVarint(in);
+                    lines += readVarint(in);
+                    ring.put(bucket, score, lines);
+                }
+            }
+        }
+    }
+
+    private static class Ring {
+        final int step;
+        final int[] scores;
+        final int[] lines;
+        long first = -1;
+        long newest = -1;
+
+        Ring(int step, int capacity) {
+            this.step = step;
+            scores = new int[capacity];
+            lines = new int[capacity];
+        }
+
+        /**
+         * Buckets skipped since the newest one keep its values
+         */
+        void put(long bucket, int score, int lineCount) {
+            if (newest < 0) {
+                first = bucket;
+            } else if (bucket < newest) {
+                return;
+            } else if (bucket > newest) {
+                int previousScore = scores[slot(newest)];
+                int previousLines = lines[slot(newest)];
+                for (long skipped = Math.max(newest + 1, bucket - scores.length + 1); skipped < bucket; skipped++) {
+                    scores[slot(skipped)] = previousScore;
+                    lines[slot(skipped)] = previousLines;
+                }
+            }
+            newest = bucket;
+            scores[slot(bucket)] = score;
+            lines[slot(bucket)] = lineCount;
+        }
+
+        long oldest() {
+            return Math.max(first, newest - scores.length + 1);
+        }
+
+        int slot(long bucket) {
+            return (int) (bucket % scores.length);
+        }
+    }
+}
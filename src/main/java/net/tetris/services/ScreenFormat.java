@@ -0,0 +1,35 @@
+package net.tetris.services;
+
+/**
+ * Encoding of screen frames requested by the client
+ */
+public enum ScreenFormat {
+    /**
+     * Every cell as a separate plot <code>{"cyan":[x,y]}</code>, deltas supported
+     */
+    PLOTS,
+    /**
+     * Version 1 of the compact schema. Glass as row bitmasks <code>"g":[row0,row1,...]</code>
+     * (bit x set when cell x is occupied, empty top rows omitted) with run-length encoded colors
+     * <code>"c":[[color,count],...]</code> over occupied cells from bottom row, left to right, where color is
+     * {@link PlotColor} ordinal. The falling figure goes separately as <code>"f":[type,rotation,x,y]</code>.
+     */
+    COMPACT,
+    /**
+     * Score and height of every glass column only, <code>"h":[h0,...,h9],"s":N</code>, wrapped the same way
+     * as {@link #COMPACT}. For boards showing many players at once.
+     */
+    THUMBNAIL;
+
+    public static final int COMPACT_VERSION = 1;
+
+    public static ScreenFormat parse(String format) {
+        if ("compact".equalsIgnoreCase(format)) {
+            return COMPACT;
+        }
+        if ("thumbnail".equalsIgnoreCase(format)) {
+            return THUMBNAIL;
+        }
+        return PLOTS;
+    }
+}
@@ -0,0 +1,197 @@
+package net.tetris.services;
+
+import net.tetris.web.controller.UpdateRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Screens of all players for one tick. Every player fragment is encoded once, responses are assembled
+ * by concatenating the fragments.
+ * <p/>
+ * Requests without a sequence get the plain map <code>{"name":{"plots":[...],"score":N},...}</code>.
+ * Requests carrying the sequence of the last applied frame get
+ * <code>{"seq":N,"players":{"name":{...},...}}</code> with only the changes since that frame,
+ * see {@link PlayerFrame#getFragmentSince(long, FrameWriter)}.
+ * Requests for {@link ScreenFormat#COMPACT} and {@link ScreenFormat#THUMBNAIL} always get full frames
+ * <code>{"v":1,"seq":N,"players":{...}}</code>.
+ * <p/>
+ * Gzipped bodies are compressed once for every distinct request shape (players, format and base frame)
+ * and live as long as the frames, that is until the next tick.
+ */
+class ScreenFrames {
+    private static final byte[] SEQUENCE_START = FrameWriter.ascii("{\"seq\":");
+    private static final byte[] PLAYERS_START = FrameWriter.ascii(",\"players\":{");
+    private static final byte[] COMPACT_START = FrameWriter.ascii("{\"v\":" + ScreenFormat.COMPACT_VERSION + ",\"seq\":");
+    private static final long NO_SEQUENCE = -1;
+    private static final long COMPACT = Long.MIN_VALUE;
+    private static final long THUMBNAIL = Long.MIN_VALUE + 1;
+
+    private static final ThreadLocal<FrameWriter> WRITERS = new ThreadLocal<FrameWriter>() {
+        @Override
+        protected FrameWriter initialValue() {
+            return new FrameWriter();
+        }
+    };
+
+    private final long sequence;
+    private final Map<String, PlayerFrame> frames = new LinkedHashMap<>();
+    private final ConcurrentMap<Long, byte[]> allPlayersBodies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, byte[]> gzippedBodies = new ConcurrentHashMap<>();
+
+    ScreenFrames(long sequence, Map<Player, PlayerData> playerScreens, ScreenHistory history) {
+        this.sequence = sequence;
+        for (Map.Entry<Player, PlayerData> entry : playerScreens.entrySet()) {
+            String name = entry.getKey().getName();
+            frames.put(name, new PlayerFrame(name, sequence, entry.getValue(), history.getPrevious(name)));
+        }
+        for (PlayerFrame frame : frames.values()) {
+            history.record(sequence, frame);
+        }
+        history.evictOlderThan(sequence);
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return false when there is nothing to send for the request
+     */
+    boolean hasScreensFor(UpdateRequest request) {
+        if (request.isForAllPlayers()) {
+            return !frames.isEmpty();
+        }
+        for (String name : request.getPlayersToUpdate()) {
+            if (frames.containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void writeTo(OutputStream out, UpdateRequest request) throws IOException {
+        long base = baseOf(request);
+        if (request.isForAllPlayers()) {
+            out.write(getAllPlayersBody(base));
+            return;
+        }
+        writeStart(out, base);
+        boolean first = true;
+        for (String name : request.getPlayersToUpdate()) {
+            PlayerFrame frame = frames.get(name);
+            if (frame == null) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write(fragment(frame, base));
+        }
+        writeEnd(out, base);
+    }
+
+    /**
+     * @return gzipped body for the request, shared by all requests of the same shape
+     */
+    byte[] getGzippedBody(UpdateRequest request) throws IOException {
+        String key = shapeOf(request);
+        byte[] body = gzippedBodies.get(key);
+        if (body == null) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                writeTo(out, request);
+            }
+            body = compressed.toByteArray();
+            byte[] existing = gzippedBodies.putIfAbsent(key, body);
+            if (existing != null) {
+                body = existing;
+            }
+        }
+        return body;
+    }
+
+    private String shapeOf(UpdateRequest request) {
+        StringBuilder key = new StringBuilder().append(baseOf(request)).append(':');
+        if (request.isForAllPlayers()) {
+            return key.append('*').toString();
+        }
+        for (String name : new TreeSet<>(request.getPlayersToUpdate())) {
+            if (frames.containsKey(name)) {
+                key.append(name.length()).append(':').append(name);
+            }
+        }
+        return key.toString();
+    }
+
+    private static long baseOf(UpdateRequest request) {
+        if (request.getFormat() == ScreenFormat.COMPACT) {
+            return COMPACT;
+        }
+        if (request.getFormat() == ScreenFormat.THUMBNAIL) {
+            return THUMBNAIL;
+        }
+        return request.getLastSequence() < 0 ? NO_SEQUENCE : request.getLastSequence();
+    }
+
+    private byte[] getAllPlayersBody(long base) throws IOException {
+        byte[] body = allPlayersBodies.get(base);
+        if (body == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeStart(out, base);
+            boolean first = true;
+            for (PlayerFrame frame : frames.values()) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write(fragment(frame, base));
+            }
+            writeEnd(out, base);
+            body = out.toByteArray();
+            allPlayersBodies.putIfAbsent(base, body);
+        }
+        return body;
+    }
+
+    /**
+     * @param base sequence of the frame the client has, {@link #NO_SEQUENCE}, {@link #COMPACT} or {@link #THUMBNAIL}
+     */
+    private byte[] fragment(PlayerFrame frame, long base) {
+        if (base == COMPACT) {
+            return frame.getCompactFragment(WRITERS.get());
+        }
+        if (base == THUMBNAIL) {
+            return frame.getThumbnailFragment(WRITERS.get());
+        }
+        if (base == NO_SEQUENCE) {
+            return frame.getFullFragment(WRITERS.get());
+        }
+        return frame.getFragmentSince(base, WRITERS.get());
+    }
+
+    private void writeStart(OutputStream out, long base) throws IOException {
+        if (base == NO_SEQUENCE) {
+            out.write('{');
+            return;
+        }
+        FrameWriter writer = WRITERS.get().reset();
+        writer.write(base == COMPACT || base == THUMBNAIL ? COMPACT_START : SEQUENCE_START).write(Long.toString(sequence).getBytes("US-ASCII")).write(PLAYERS_START);
+        out.write(writer.toByteArray());
+    }
+
+    private void writeEnd(OutputStream out, long base) throws IOException {
+        out.write('}');
+        if (base != NO_SEQUENCE) {
+            out.write('}');
+        }
+    }
+}
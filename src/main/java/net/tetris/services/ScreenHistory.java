@@ -0,0 +1,54 @@
+package net.tetris.services;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Glass cells of the last {@link #DEPTH} frames of every player, the bases for delta updates.
+ * Accessed from the tick thread only.
+ */
+class ScreenHistory {
+    static final int DEPTH = 16;
+
+    private final Map<String, Entry[]> frames = new HashMap<>();
+
+    /**
+     * @return previous frames of the player, array is not modified afterwards
+     */
+    Entry[] getPrevious(String playerName) {
+        Entry[] entries = frames.get(playerName);
+        return entries == null ? new Entry[0] : entries;
+    }
+
+    void record(long sequence, PlayerFrame frame) {
+        Entry[] entries = frames.get(frame.getName());
+        Entry[] updated = new Entry[DEPTH];
+        updated[0] = new Entry(sequence, frame.getCells());
+        if (entries != null) {
+            System.arraycopy(entries, 0, updated, 1, DEPTH - 1);
+        }
+        frames.put(frame.getName(), updated);
+    }
+
+    /**
+     * Forgets players whose latest frame is too old to be a delta base
+     */
+    void evictOlderThan(long sequence) {
+        for (Iterator<Entry[]> iterator = frames.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next()[0].sequence <= sequence - DEPTH) {
+                iterator.remove();
+            }
+        }
+    }
+
+    static class Entry {
+        final long sequence;
+        final byte[] cells;
+
+        Entry(long sequence, byte[] cells) {
+            this.sequence = sequence;
+            this.cells = cells;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import net.tetris.web.controller.UpdateRequest;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * User: serhiy.zelenin
@@ -13,5 +14,26 @@ import java.util.Map;
 public interface ScreenSender {
     void scheduleUpdate(UpdateRequest updateRequest);
 
+    /**
+     * Registers a streaming subscriber which gets a frame every tick until its connection fails
+     */
+    void subscribe(UpdateRequest stream);
+
+    /**
+     * @return names of players whose screens are waited for by requests and streams,
+     * or null when screens of all players are
+     */
+    Set<String> getWatchedPlayers();
+
     void sendUpdates(Map<Player, PlayerData> playerScreens);
+
+    /**
+     * @return number of requests waiting for the next screen update
+     */
+    int getPendingCount();
+
+    /**
+     * Answers requests waiting for a screen update too long
+     */
+    void reapExpiredRequests();
 }
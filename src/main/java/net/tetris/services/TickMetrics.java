@@ -0,0 +1,113 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import net.tetris.dom.GlassEventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the time of every tick goes, and what happens in the glasses. Written by the tick thread,
+ * read by the metrics endpoint: a phase costs one {@link System#nanoTime()} and one atomic add.
+ */
+@Component
+public class TickMetrics implements GlassEventListener {
+    public enum Phase {
+        LOCK_WAIT("lock_wait"),
+        STEP("step"),
+        RECORD("record"),
+        FRAME_BUILD("frame_build"),
+        SCREEN_FANOUT("screen_fanout"),
+        BOT_DISPATCH("bot_dispatch");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(Phase.values().length);
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong tickNanos = new AtomicLong();
+    private volatile long lastTickNanos;
+    private volatile long maxTickNanos;
+    private final AtomicLong linesRemoved = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong figuresDropped = new AtomicLong();
+
+    /**
+     * @param started when the phase started
+     * @return when the phase finished, the start of the next one
+     */
+    public long phaseFinished(Phase phase, long started) {
+        long now = System.nanoTime();
+        phaseNanos.addAndGet(phase.ordinal(), now - started);
+        return now;
+    }
+
+    /**
+     * @param started when the tick started waiting for the lock
+     */
+    public void tickFinished(long started) {
+        long nanos = System.nanoTime() - started;
+        tickNanos.addAndGet(nanos);
+        lastTickNanos = nanos;
+        if (nanos > maxTickNanos) {
+            maxTickNanos = nanos;
+        }
+        ticks.incrementAndGet();
+    }
+
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    public long getTickNanos() {
+        return tickNanos.get();
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public long getMaxTickNanos() {
+        return maxTickNanos;
+    }
+
+    public long getLinesRemoved() {
+        return linesRemoved.get();
+    }
+
+    public long getOverflows() {
+        return overflows.get();
+    }
+
+    public long getFiguresDropped() {
+        return figuresDropped.get();
+    }
+
+    @Override
+    public void glassOverflown() {
+        overflows.incrementAndGet();
+    }
+
+    @Override
+    public void linesRemoved(int amount) {
+        linesRemoved.addAndGet(amount);
+    }
+
+    @Override
+    public void figureDropped(Figure figure) {
+        figuresDropped.incrementAndGet();
+    }
+}
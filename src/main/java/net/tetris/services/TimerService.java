@@ -6,6 +6,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
@@ -31,8 +32,23 @@ public class TimerService implements Runnable {
     private volatile boolean paused;
 
     public void init() {
-        executor = new ScheduledThreadPoolExecutor(1);
+        try {
+            playerService.restore();
+        } catch (IOException e) {
+            logger.error("Unable to restore games from the journal", e);
+        }
+        executor = new ScheduledThreadPoolExecutor(2);
         future = executor.scheduleAtFixedRate(this, 1, 1, TimeUnit.SECONDS);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    screenSender.reapExpiredRequests();
+                } catch (Exception e) {
+                    logger.error("Error while reaping screen requests", e);
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
     }
 
     @Override
@@ -0,0 +1,293 @@
+package net.tetris.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshots of all games in <code>snapshot-&lt;tick&gt;.bin</code> files.
+ * <p/>
+ * File: int magic, int version, long tick, long journal mark, int number of games, every game as int length
+ * and {@link SavedGame} bytes, CRC32 of everything before it. Games are length-prefixed so they are decoded in parallel.
+ * <p/>
+ * Games are copied on the tick thread and written by a background thread. The last {@link #KEPT_SNAPSHOTS}
+ * snapshots are kept; with <code>discardJournal</code> the journal before the older of them is deleted,
+ * otherwise the journal is kept whole for replays. Snapshots are disabled when no directory is set.
+ */
+public class WorldSnapshots {
+    static final int MAGIC = 0x54534e50;
+    static final int VERSION = 3;
+    static final int KEPT_SNAPSHOTS = 2;
+
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{16})\\.bin");
+
+    private static Logger logger = LoggerFactory.getLogger(WorldSnapshots.class);
+
+    private File directory;
+    private int interval = 60;
+    private boolean discardJournal;
+    private GameJournal journal = new DisabledGameJournal();
+    private ExecutorService writer;
+
+    public void setDirectory(String directory) {
+        this.directory = directory == null || directory.trim().isEmpty() ? null : new File(directory);
+    }
+
+    /**
+     * @param interval ticks between snapshots
+     */
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    public void setDiscardJournal(boolean discardJournal) {
+        this.discardJournal = discardJournal;
+    }
+
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    public void init() throws IOException {
+        if (directory == null) {
+            logger.info("World snapshots are disabled, no directory configured");
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create snapshot directory " + directory);
+        }
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "world-snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void destroy() throws InterruptedException {
+        if (writer != null) {
+            writer.shutdown();
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    boolean isDue(long tick) {
+        return writer != null && !writer.isShutdown() && interval > 0 && tick % interval == 0;
+    }
+
+    /**
+     * Writes the games in the background
+     * @param mark journal mark taken together with the copy of the games
+     */
+    void save(final long tick, final long mark, final List<SavedGame> games) {
+        if (writer == null || writer.isShutdown()) {
+            return;
+        }
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(tick, mark, games);
+                    discardOld();
+                } catch (Exception e) {
+                    logger.error("Unable to write snapshot at tick " + tick, e);
+                }
+            }
+        });
+    }
+
+    void write(long tick, long mark, List<SavedGame> games) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + games.size() * 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(tick);
+        out.writeLong(mark);
+        out.writeInt(games.size());
+        ByteArrayOutputStream gameBytes = new ByteArrayOutputStream(128);
+        DataOutputStream gameOut = new DataOutputStream(gameBytes);
+        for (SavedGame game : games) {
+            gameBytes.reset();
+            game.writeTo(gameOut);
+            out.writeInt(gameBytes.size());
+            gameBytes.writeTo(out);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+
+        File temporary = new File(directory, String.format("snapshot-%016d.tmp", tick));
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            bytes.writeTo(file);
+            file.getFD().sync();
+        }
+        File snapshot = snapshotFile(tick);
+        if (!temporary.renameTo(snapshot)) {
+            throw new IOException("Unable to rename " + temporary + " to " + snapshot);
+        }
+    }
+
+    private void discardOld() {
+        List<Long> ticks = listSnapshots();
+        if (ticks.size() <= KEPT_SNAPSHOTS) {
+            return;
+        }
+        long oldestKept = ticks.get(ticks.size() - KEPT_SNAPSHOTS);
+        for (long tick : ticks.subList(0, ticks.size() - KEPT_SNAPSHOTS)) {
+            if (!snapshotFile(tick).delete()) {
+                logger.warn("Unable to delete snapshot " + snapshotFile(tick));
+            }
+        }
+        if (discardJournal) {
+            try {
+                journal.discardBefore(readMark(oldestKept));
+            } catch (IOException e) {
+                logger.error("Unable to read snapshot at tick " + oldestKept, e);
+            }
+        }
+    }
+
+    /**
+     * @return the latest snapshot that can be read, null when there is none
+     */
+    Snapshot loadLatest() {
+        if (directory == null) {
+            return null;
+        }
+        List<Long> ticks = listSnapshots();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = ticks.size() - 1; i >= 0; i--) {
+            try {
+                return read(ticks.get(i), threads);
+            } catch (IOException e) {
+                logger.error("Unable to read snapshot at tick " + ticks.get(i) + ", trying the previous one", e);
+            }
+        }
+        return null;
+    }
+
+    private long readMark(long tick) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(snapshotFile(tick)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown snapshot format");
+            }
+            in.readLong();
+            return in.readLong();
+        }
+    }
+
+    private Snapshot read(long tick, int threads) throws IOException {
+        final byte[] bytes = Files.readAllBytes(snapshotFile(tick).toPath());
+        if (bytes.length < 36) {
+            throw new IOException("Snapshot is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getLong(bytes.length - 8) != crc.getValue()) {
+            throw new IOException("Snapshot checksum does not match");
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unknown snapshot format");
+        }
+        Snapshot snapshot = new Snapshot(buffer.getLong(), buffer.getLong());
+        final int[] offsets = new int[buffer.getInt()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = buffer.position();
+            buffer.position(buffer.position() + 4 + buffer.getInt(buffer.position()));
+        }
+        if (offsets.length == 0) {
+            return snapshot;
+        }
+
+        final SavedGame[] games = new SavedGame[offsets.length];
+        int chunks = Math.max(1, Math.min(threads, offsets.length / 256));
+        final int chunkSize = (offsets.length + chunks - 1) / chunks;
+        ExecutorService decoders = Executors.newFixedThreadPool(chunks);
+        try {
+            List<Future<Void>> decoded = new ArrayList<>();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final int from = chunk * chunkSize;
+                final int to = Math.min(offsets.length, from + chunkSize);
+                decoded.add(decoders.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        for (int i = from; i < to; i++) {
+                            int length = ByteBuffer.wrap(bytes, offsets[i], 4).getInt();
+                            games[i] = SavedGame.readFrom(new DataInputStream(
+                                    new ByteArrayInputStream(bytes, offsets[i] + 4, length)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : decoded) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading snapshot", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to decode snapshot", e.getCause());
+        } finally {
+            decoders.shutdown();
+        }
+        Collections.addAll(snapshot.games, games);
+        return snapshot;
+    }
+
+    private List<Long> listSnapshots() {
+        List<Long> ticks = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = SNAPSHOT_NAME.matcher(file.getName());
+                if (matcher.matches()) {
+                    ticks.add(Long.parseLong(matcher.group(1)));
+                }
+            }
+        }
+        Collections.sort(ticks);
+        return ticks;
+    }
+
+    private File snapshotFile(long tick) {
+        return new File(directory, String.format("snapshot-%016d.bin", tick));
+    }
+
+    static class Snapshot {
+        final long tick;
+        final long mark;
+        final List<SavedGame> games = new ArrayList<>();
+
+        Snapshot(long tick, long mark) {
+            this.tick = tick;
+            this.mark = mark;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -17,6 +18,7 @@ import java.util.List;
 @Controller
 public class BoardController {
     public static final ArrayList<Object> EMPTY_LIST = new ArrayList<>();
+    public static final int MAX_PAGE_SIZE = 100;
     @Autowired
     private PlayerService playerService;
 
@@ -40,10 +42,21 @@ public class BoardController {
         return "board";
     }
 
+    /**
+     * Page of the all players board. The page subscribes to screens of its own players only,
+     * a single page board keeps subscribing to all players to show new registrations.
+     */
     @RequestMapping(value = "/board",method = RequestMethod.GET)
-    public String boardAll(ModelMap model) {
-        model.addAttribute("players", playerService.getPlayers());
-        model.addAttribute("allPlayersScreen", true);
+    public String boardAll(ModelMap model, @RequestParam(value = "page", defaultValue = "1") int page,
+                           @RequestParam(value = "size", defaultValue = "24") int size) {
+        size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pages = Math.max(1, (playerService.getPlayersCount() + size - 1) / size);
+        page = Math.max(1, Math.min(page, pages));
+        model.addAttribute("players", playerService.getPlayers((page - 1) * size, size));
+        model.addAttribute("allPlayersScreen", pages == 1);
+        model.addAttribute("page", page);
+        model.addAttribute("pages", pages);
+        model.addAttribute("size", size);
         return "board";
     }
 }
@@ -0,0 +1,169 @@
+package net.tetris.web.controller;
+
+import net.tetris.dom.Joystick;
+import net.tetris.services.BotChannel;
+import net.tetris.services.BotChannels;
+import net.tetris.services.CommandParser;
+import net.tetris.services.Player;
+import net.tetris.services.PlayerService;
+import org.eclipse.jetty.websocket.WebSocket;
+import org.eclipse.jetty.websocket.WebSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.HttpRequestHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * WebSocket endpoint for bots: <code>ws://host/bot?name=playerName&token=playerToken</code>.
+ * Every tick the game state is pushed as a text frame in the same format as the callback request query,
+ * any text frame from the bot is parsed as commands (<code>left=1,rotate=2,drop</code>).
+ */
+public class BotSocketController implements HttpRequestHandler, WebSocketFactory.Acceptor {
+    private static Logger logger = LoggerFactory.getLogger(BotSocketController.class);
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private BotChannels botChannels;
+
+    private final CommandParser commandParser = new CommandParser();
+    private WebSocketFactory webSocketFactory;
+    private ExecutorService sendExecutor;
+    private int sendThreads = 4;
+    private int maxIdleTime = 60000;
+
+    public BotSocketController() {
+    }
+
+    //for unit test
+    public BotSocketController(PlayerService playerService, BotChannels botChannels) {
+        this.playerService = playerService;
+        this.botChannels = botChannels;
+    }
+
+    public void init() throws Exception {
+        sendExecutor = Executors.newFixedThreadPool(sendThreads);
+        webSocketFactory = new WebSocketFactory(this);
+        webSocketFactory.setMaxIdleTime(maxIdleTime);
+        webSocketFactory.start();
+    }
+
+    public void destroy() throws Exception {
+        webSocketFactory.stop();
+        sendExecutor.shutdownNow();
+    }
+
+    @Override
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (!webSocketFactory.acceptWebSocket(request, response) && !response.isCommitted()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "WebSocket upgrade expected");
+        }
+    }
+
+    @Override
+    public WebSocket doWebSocketConnect(HttpServletRequest request, String protocol) {
+        String playerName = request.getParameter("name");
+        Player player = playerName == null ? null : playerService.findPlayer(playerName);
+        if (player == null || !player.hasToken(request.getParameter("token"))) {
+            return null;
+        }
+        return new BotWebSocket(playerName, playerService.getJoystick(playerName));
+    }
+
+    @Override
+    public boolean checkOrigin(HttpServletRequest request, String origin) {
+        return true;
+    }
+
+    public void setSendThreads(int sendThreads) {
+        this.sendThreads = sendThreads;
+    }
+
+    public void setMaxIdleTime(int maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Sends are performed off the tick thread. If the bot has not received the previous state yet
+     * it gets only the latest one.
+     */
+    class BotWebSocket implements WebSocket.OnTextMessage, BotChannel, Runnable {
+        private final String playerName;
+        private final Joystick joystick;
+        private final AtomicReference<String> pendingState = new AtomicReference<>();
+        private final AtomicBoolean sendScheduled = new AtomicBoolean();
+        private volatile Connection connection;
+
+        BotWebSocket(String playerName, Joystick joystick) {
+            this.playerName = playerName;
+            this.joystick = joystick;
+        }
+
+        @Override
+        public void onOpen(Connection connection) {
+            this.connection = connection;
+            botChannels.register(playerName, this);
+            logger.info("Player " + playerName + " opened push channel");
+        }
+
+        @Override
+        public void onClose(int closeCode, String message) {
+            botChannels.unregister(playerName, this);
+            connection = null;
+            logger.info("Player " + playerName + " closed push channel");
+        }
+
+        @Override
+        public void onMessage(String data) {
+            commandParser.process(data, joystick, playerName);
+        }
+
+        @Override
+        public void sendState(String state) {
+            pendingState.set(state);
+            if (sendScheduled.compareAndSet(false, true)) {
+                sendExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            sendScheduled.set(false);
+            String state = pendingState.getAndSet(null);
+            Connection current = connection;
+            if (state == null || current == null) {
+                return;
+            }
+            try {
+                current.sendMessage(state);
+            } catch (IOException e) {
+                logger.warn("Unable to push state to player " + playerName + ": " + e);
+                close();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            Connection current = connection;
+            return current != null && current.isOpen();
+        }
+
+        @Override
+        public void close() {
+            Connection current = connection;
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+}
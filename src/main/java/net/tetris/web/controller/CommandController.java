@@ -0,0 +1,81 @@
+package net.tetris.web.controller;
+
+import net.tetris.dom.Joystick;
+import net.tetris.services.CommandParser;
+import net.tetris.services.Player;
+import net.tetris.services.PlayerService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Lets bots pull the state and push commands at any time during the tick, without a callback URL.
+ * Commands are applied at the next step, the same way as commands from the callback response.
+ */
+@Controller
+public class CommandController {
+    private final CommandParser commandParser = new CommandParser();
+
+    @Autowired
+    private PlayerService playerService;
+
+    public CommandController() {
+    }
+
+    //for unit test
+    public CommandController(PlayerService playerService) {
+        this.playerService = playerService;
+    }
+
+    @RequestMapping(value = "/command/{playerName}", method = RequestMethod.POST)
+    public void submitCommands(@PathVariable("playerName") String playerName,
+                               @RequestParam("token") String token,
+                               @RequestParam("commands") String commands,
+                               HttpServletResponse response) throws IOException {
+        if (!isAuthorized(playerName, token, response)) {
+            return;
+        }
+        Joystick joystick = playerService.getJoystick(playerName);
+        if (joystick == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        commandParser.process(commands, joystick, playerName);
+        response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    @RequestMapping(value = "/command/{playerName}", method = RequestMethod.GET)
+    public void currentState(@PathVariable("playerName") String playerName,
+                             @RequestParam("token") String token,
+                             HttpServletResponse response) throws IOException {
+        if (!isAuthorized(playerName, token, response)) {
+            return;
+        }
+        String state = playerService.getBotState(playerName);
+        if (state == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().print(state);
+    }
+
+    private boolean isAuthorized(String playerName, String token, HttpServletResponse response) throws IOException {
+        Player player = playerService.findPlayer(playerName);
+        if (player == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return false;
+        }
+        if (!player.hasToken(token)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return false;
+        }
+        return true;
+    }
+}
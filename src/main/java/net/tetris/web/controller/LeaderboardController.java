@@ -0,0 +1,107 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.Leaderboard;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Rankings for the projector page: <code>{"players":[{"name":"vasya","score":N,"rank":N},...],"total":N}</code>.
+ * The ETag is the tick of the last change, so polling within a tick gets 304.
+ */
+@Controller
+public class LeaderboardController {
+    public static final int MAX_LIMIT = 100;
+
+    @Autowired
+    private Leaderboard leaderboard;
+
+    public LeaderboardController() {
+    }
+
+    //for unit test
+    public LeaderboardController(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+    }
+
+    @RequestMapping(value = "/leaderboard", method = RequestMethod.GET)
+    public void top(@RequestParam(value = "offset", defaultValue = "0") int offset,
+                    @RequestParam(value = "limit", defaultValue = "10") int limit,
+                    HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (isNotModified(request, response)) {
+            return;
+        }
+        List<Leaderboard.Entry> entries = leaderboard.getTop(Math.max(0, offset), Math.max(0, Math.min(limit, MAX_LIMIT)));
+        PrintWriter writer = startJson(response);
+        writer.print("{\"players\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                writer.print(',');
+            }
+            Leaderboard.Entry entry = entries.get(i);
+            writeEntry(writer, entry.getName(), entry.getScore(), entry.getRank());
+        }
+        writer.print("],\"total\":");
+        writer.print(leaderboard.size());
+        writer.print('}');
+    }
+
+    @RequestMapping(value = "/leaderboard/{playerName}", method = RequestMethod.GET)
+    public void rank(@PathVariable("playerName") String playerName,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (isNotModified(request, response)) {
+            return;
+        }
+        Leaderboard.Entry entry = leaderboard.getEntry(playerName);
+        if (entry == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        writeEntry(startJson(response), entry.getName(), entry.getScore(), entry.getRank());
+    }
+
+    private boolean isNotModified(HttpServletRequest request, HttpServletResponse response) {
+        String etag = "\"" + leaderboard.getVersion() + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    private static PrintWriter startJson(HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        return response.getWriter();
+    }
+
+    private static void writeEntry(PrintWriter writer, String name, int score, int rank) {
+        writer.print("{\"name\":\"");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.print('\\');
+                writer.print(c);
+            } else if (c < 0x20) {
+                writer.print(String.format("\\u%04x", (int) c));
+            } else {
+                writer.print(c);
+            }
+        }
+        writer.print("\",\"score\":");
+        writer.print(score);
+        writer.print(",\"rank\":");
+        writer.print(rank);
+        writer.print('}');
+    }
+}
@@ -0,0 +1,107 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.PlayerController;
+import net.tetris.services.PlayerService;
+import net.tetris.services.ScreenSender;
+import net.tetris.services.TickMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Tick phase timers, gauges and glass counters in Prometheus text format
+ */
+@Controller
+public class MetricsController {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    @Autowired
+    private TickMetrics metrics;
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private ScreenSender screenSender;
+
+    @Autowired
+    private PlayerController playerController;
+
+    public MetricsController() {
+    }
+
+    //for unit test
+    public MetricsController(TickMetrics metrics, PlayerService playerService, ScreenSender screenSender,
+                             PlayerController playerController) {
+        this.metrics = metrics;
+        this.playerService = playerService;
+        this.screenSender = screenSender;
+        this.playerController = playerController;
+    }
+
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    public void metrics(HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        PrintWriter writer = response.getWriter();
+        long ticks = metrics.getTicks();
+
+        header(writer, "tetris_tick_phase_seconds", "summary", "Time of a tick spent in every phase.");
+        for (TickMetrics.Phase phase : TickMetrics.Phase.values()) {
+            String labels = "{phase=\"" + phase.getName() + "\"}";
+            sample(writer, "tetris_tick_phase_seconds_sum" + labels, metrics.getPhaseNanos(phase) / NANOS_PER_SECOND);
+            sample(writer, "tetris_tick_phase_seconds_count" + labels, ticks);
+        }
+        header(writer, "tetris_tick_seconds", "summary", "Time of a tick from waiting for the lock to the screens sent.");
+        sample(writer, "tetris_tick_seconds_sum", metrics.getTickNanos() / NANOS_PER_SECOND);
+        sample(writer, "tetris_tick_seconds_count", ticks);
+        header(writer, "tetris_tick_last_seconds", "gauge", "Time of the last tick.");
+        sample(writer, "tetris_tick_last_seconds", metrics.getLastTickNanos() / NANOS_PER_SECOND);
+        header(writer, "tetris_tick_max_seconds", "gauge", "Time of the longest tick since start.");
+        sample(writer, "tetris_tick_max_seconds", metrics.getMaxTickNanos() / NANOS_PER_SECOND);
+
+        header(writer, "tetris_players", "gauge", "Registered players.");
+        sample(writer, "tetris_players", playerService.getPlayers().size());
+        header(writer, "tetris_pending_screen_requests", "gauge", "Screen requests waiting for the next tick.");
+        sample(writer, "tetris_pending_screen_requests", screenSender.getPendingCount());
+        header(writer, "tetris_bot_exchanges_in_flight", "gauge", "Callback requests to bots not answered yet.");
+        sample(writer, "tetris_bot_exchanges_in_flight", playerController.getInFlightCount());
+
+        header(writer, "tetris_lines_removed_total", "counter", "Lines removed in all glasses.");
+        sample(writer, "tetris_lines_removed_total", metrics.getLinesRemoved());
+        header(writer, "tetris_glass_overflows_total", "counter", "Glasses overflown.");
+        sample(writer, "tetris_glass_overflows_total", metrics.getOverflows());
+        header(writer, "tetris_figures_dropped_total", "counter", "Figures dropped in all glasses.");
+        sample(writer, "tetris_figures_dropped_total", metrics.getFiguresDropped());
+    }
+
+    private static void header(PrintWriter writer, String name, String type, String help) {
+        writer.print("# HELP ");
+        writer.print(name);
+        writer.print(' ');
+        writer.print(help);
+        writer.print("\n# TYPE ");
+        writer.print(name);
+        writer.print(' ');
+        writer.print(type);
+        writer.print('\n');
+    }
+
+    private static void sample(PrintWriter writer, String name, long value) {
+        writer.print(name);
+        writer.print(' ');
+        writer.print(value);
+        writer.print('\n');
+    }
+
+    private static void sample(PrintWriter writer, String name, double value) {
+        writer.print(name);
+        writer.print(' ');
+        writer.print(value);
+        writer.print('\n');
+    }
+}
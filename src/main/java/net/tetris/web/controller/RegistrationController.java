@@ -8,6 +8,8 @@ import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 /**
  * User: serhiy.zelenin
@@ -20,6 +22,14 @@ public class RegistrationController {
     @Autowired
     private PlayerService playerService;
 
+    public RegistrationController() {
+    }
+
+    //for unit test
+    public RegistrationController(PlayerService playerService) {
+        this.playerService = playerService;
+    }
+
     @RequestMapping(method = RequestMethod.GET)
     public String openRegistrationForm(Model model) {
         model.addAttribute("player", new Player());
@@ -27,15 +37,28 @@ public class RegistrationController {
     }
 
     @RequestMapping(method = RequestMethod.POST)
-    public String submitRegistrationForm(Player player, BindingResult result) {
+    public String submitRegistrationForm(Player player, BindingResult result,
+                                         @RequestParam(value = "token", required = false) String token,
+                                         RedirectAttributes redirectAttributes) {
         if (result.hasErrors()) {
             return "register";
         }
-        if (playerService.alreadyRegistered(player.getName())) {
+        if (ScreenController.isReservedParameter(player.getName())) {
+            result.rejectValue("name", "registration.reserved", "Name is reserved, choose another one");
+            return "register";
+        }
+        Player registered = playerService.findPlayer(player.getName());
+        if (registered != null) {
+            if (!registered.hasToken(token)) {
+                result.rejectValue("name", "registration.taken",
+                        "Name is already taken, enter its bot token to change the URL");
+                return "register";
+            }
             playerService.updatePlayer(player);
             return "redirect:/board/" + player.getName();
         }
-        playerService.addNewPlayer(player.getName(), player.getCallbackUrl());
+        registered = playerService.addNewPlayer(player.getName(), player.getCallbackUrl());
+        redirectAttributes.addFlashAttribute("token", registered.getToken());
         return "redirect:/board/" + player.getName();
     }
 
@@ -0,0 +1,63 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.ScoreHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Score history of a player for charts: <code>{"step":N,"points":[[tick,score,lines],...]}</code>
+ */
+@Controller
+public class ScoreController {
+    public static final int MAX_POINTS = 2000;
+
+    @Autowired
+    private ScoreHistory scoreHistory;
+
+    public ScoreController() {
+    }
+
+    //for unit test
+    public ScoreController(ScoreHistory scoreHistory) {
+        this.scoreHistory = scoreHistory;
+    }
+
+    @RequestMapping(value = "/scores/{playerName}", method = RequestMethod.GET)
+    public void scores(@PathVariable("playerName") String playerName,
+                       @RequestParam(value = "from", defaultValue = "0") long from,
+                       @RequestParam(value = "to", defaultValue = "" + Long.MAX_VALUE) long to,
+                       @RequestParam(value = "points", defaultValue = "500") int points,
+                       HttpServletResponse response) throws IOException {
+        ScoreHistory.Range range = scoreHistory.query(playerName, from, to, Math.min(points, MAX_POINTS));
+        if (range == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter writer = response.getWriter();
+        writer.print("{\"step\":");
+        writer.print(range.getStep());
+        writer.print(",\"points\":[");
+        for (int i = 0; i < range.size(); i++) {
+            if (i > 0) {
+                writer.print(',');
+            }
+            writer.print('[');
+            writer.print(range.getTick(i));
+            writer.print(',');
+            writer.print(range.getScore(i));
+            writer.print(',');
+            writer.print(range.getLines(i));
+            writer.print(']');
+        }
+        writer.print("]}");
+    }
+}
@@ -1,5 +1,6 @@
 package net.tetris.web.controller;
 
+import net.tetris.services.ScreenFormat;
 import net.tetris.services.ScreenSender;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -12,6 +13,9 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -21,9 +25,19 @@ import java.util.Set;
  */
 //@WebServlet(name = "consoleServlet", urlPatterns = "/screen", asyncSupported = true)
 public class ScreenController implements HttpRequestHandler {
+    public static final String ALL_PLAYERS_SCREEN = "allPlayersScreen";
+    public static final String SEQUENCE = "seq";
+    public static final String FORMAT = "format";
+    public static final String EVERY = "every";
+    public static final String CLIENT = "client";
+    /**
+     * Request parameters which are not player names. "_" is added by jQuery to disable caching
+     */
+    private static final List<String> RESERVED_PARAMETERS = Arrays.asList(ALL_PLAYERS_SCREEN, SEQUENCE, FORMAT, EVERY, CLIENT, "_");
 
     @Autowired
     private ScreenSender screenSender;
+    private long timeout = 60000;
 
     public ScreenController() {
     }
@@ -36,11 +50,74 @@ public class ScreenController implements HttpRequestHandler {
     @Override
     public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         AsyncContext asyncContext = request.startAsync();
-        if ("true".equals(request.getParameter("allPlayersScreen"))) {
-            screenSender.scheduleUpdate(new UpdateRequest(asyncContext, true, null));
+        asyncContext.setTimeout(timeout);
+        UpdateRequest updateRequest = createUpdateRequest(request, asyncContext);
+        updateRequest.setClientId(request.getParameter(CLIENT));
+        updateRequest.setLastSequence(parseSequence(request.getParameter(SEQUENCE)));
+        updateRequest.setGzipAccepted(acceptsGzip(request.getHeader("Accept-Encoding")));
+        screenSender.scheduleUpdate(updateRequest);
+    }
+
+    /**
+     * Container timeout of a waiting request, a backstop for the sender reaping expired requests
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return true for names which can't be watched because they are request parameters
+     */
+    static boolean isReservedParameter(String name) {
+        return RESERVED_PARAMETERS.contains(name);
+    }
+
+    static UpdateRequest createUpdateRequest(HttpServletRequest request, AsyncContext asyncContext) {
+        UpdateRequest updateRequest;
+        if ("true".equals(request.getParameter(ALL_PLAYERS_SCREEN))) {
+            updateRequest = new UpdateRequest(asyncContext, true, null);
         } else {
-            Set<String> playersToUpdate = request.getParameterMap().keySet();
-            screenSender.scheduleUpdate(new UpdateRequest(asyncContext, false, playersToUpdate));
+            Set<String> playersToUpdate = new HashSet<>(request.getParameterMap().keySet());
+            playersToUpdate.removeAll(RESERVED_PARAMETERS);
+            updateRequest = new UpdateRequest(asyncContext, false, playersToUpdate);
+        }
+        updateRequest.setFormat(ScreenFormat.parse(request.getParameter(FORMAT)));
+        updateRequest.setEvery(parseEvery(request.getParameter(EVERY)));
+        return updateRequest;
+    }
+
+    static int parseEvery(String every) {
+        if (every == null) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(every));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    static long parseSequence(String sequence) {
+        if (sequence == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(sequence));
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.ScreenSender;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.HttpRequestHandler;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Server-Sent Events stream of screen frames, one event per tick over a single connection.
+ * Accepts the same parameters as {@link ScreenController}. Event ids are frame sequences, so a reconnecting
+ * EventSource continues with deltas since the last frame it got. Headers are sent with the first frame or heartbeat,
+ * streams over the bound of the sender are answered with 503.
+ */
+public class ScreenStreamController implements HttpRequestHandler {
+    public static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    @Autowired
+    private ScreenSender screenSender;
+
+    public ScreenStreamController() {
+    }
+
+    public ScreenStreamController(ScreenSender screenSender) {
+        this.screenSender = screenSender;
+    }
+
+    @Override
+    public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("text/event-stream;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+
+        AsyncContext asyncContext = request.startAsync();
+        // the sender closes streams open longer than its stream timeout, completing them safely after a write
+        asyncContext.setTimeout(0);
+        UpdateRequest stream = ScreenController.createUpdateRequest(request, asyncContext);
+        stream.setGzipAccepted(ScreenController.acceptsGzip(request.getHeader("Accept-Encoding")));
+        String lastEventId = request.getHeader(LAST_EVENT_ID);
+        stream.setLastSequence(ScreenController.parseSequence(lastEventId != null ? lastEventId : request.getParameter(ScreenController.SEQUENCE)));
+        if (stream.getLastSequence() < 0) {
+            stream.setLastSequence(0);
+        }
+        screenSender.subscribe(stream);
+    }
+}
@@ -1,9 +1,12 @@
 package net.tetris.web.controller;
 
+import net.tetris.services.ScreenFormat;
+
 import javax.servlet.AsyncContext;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * User: serhiy.zelenin
@@ -14,6 +17,13 @@ public class UpdateRequest {
     private AsyncContext asyncContext;
     private Set<String> playersToUpdate;
     private boolean forAllPlayers;
+    private long lastSequence = -1;
+    private ScreenFormat format = ScreenFormat.PLOTS;
+    private boolean gzipAccepted;
+    private int every = 1;
+    private String clientId;
+    private volatile long scheduledAt;
+    private final AtomicBoolean finished = new AtomicBoolean();
 
     public UpdateRequest(AsyncContext asyncContext, boolean forAllPlayers, Set<String> playersToUpdate) {
         this.asyncContext = asyncContext;
@@ -37,12 +47,99 @@ public class UpdateRequest {
         return forAllPlayers;
     }
 
+    /**
+     * @return sequence of the last frame the client applied, 0 when it has none yet
+     * or -1 when the client doesn't support sequenced updates
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public void setLastSequence(long lastSequence) {
+        this.lastSequence = lastSequence;
+    }
+
+    public ScreenFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(ScreenFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * @return true when the client sent <code>Accept-Encoding: gzip</code>
+     */
+    public boolean isGzipAccepted() {
+        return gzipAccepted;
+    }
+
+    public void setGzipAccepted(boolean gzipAccepted) {
+        this.gzipAccepted = gzipAccepted;
+    }
+
+    /**
+     * @return the client gets frames of every N-th tick only
+     */
+    public int getEvery() {
+        return every;
+    }
+
+    public void setEvery(int every) {
+        this.every = Math.max(1, every);
+    }
+
+    /**
+     * @return true when the frame with the sequence is to be sent to the client
+     */
+    public boolean isDue(long sequence) {
+        return sequence % every == 0;
+    }
+
+    /**
+     * @return id of the page sending the request, a newer request with the same id supersedes this one,
+     * or null when unknown
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public long getScheduledAt() {
+        return scheduledAt;
+    }
+
+    public void setScheduledAt(long scheduledAt) {
+        this.scheduledAt = scheduledAt;
+    }
+
+    /**
+     * Marks the request answered
+     *
+     * @return false when it is already answered
+     */
+    public boolean finish() {
+        return finished.compareAndSet(false, true);
+    }
+
+    public boolean isFinished() {
+        return finished.get();
+    }
+
     @Override
     public String toString() {
         return "UpdateRequest{" +
                 "asyncContext=" + asyncContext +
                 ", playersToUpdate=" + playersToUpdate +
                 ", forAllPlayers=" + forAllPlayers +
+                ", lastSequence=" + lastSequence +
+                ", format=" + format +
+                ", gzipAccepted=" + gzipAccepted +
+                ", every=" + every +
+                ", clientId=" + clientId +
                 '}';
     }
 }
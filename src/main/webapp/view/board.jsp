@@ -12,12 +12,27 @@
 <script>
     var canvases = new Object();
     var players = new Object();
+    var glasses = new Object();
+    var lastSeq = 0;
+    var format = "${param.format == 'plots' || param.format == 'thumbnail' ? param.format : 'compact'}";
+    var clientId = Math.random().toString(36).substring(2);
+    var every = parseInt("<c:out value='${param.every}'/>", 10) || 1;
+    var palette = ["blue", "cyan", "green", "orange", "purple", "red", "yellow"];
+    var figures = {
+        I:{cx:0, cy:1, rows:["#", "#", "#", "#"]},
+        J:{cx:1, cy:1, rows:[" #", " #", "##"]},
+        L:{cx:0, cy:1, rows:["# ", "# ", "##"]},
+        O:{cx:0, cy:0, rows:["##", "##"]},
+        S:{cx:1, cy:1, rows:[" ##", "## "]},
+        T:{cx:1, cy:1, rows:[" # ", "###"]},
+        Z:{cx:1, cy:1, rows:["## ", " ##"]}
+    };
 
-    function constructUrl() {
+    function constructUrl(path) {
         if (allPlayersScreen) {
-            return "/screen?allPlayersScreen=true"
+            return path + "?allPlayersScreen=true&format=" + format + "&every=" + every;
         }
-        var url = "/screen?";
+        var url = path + "?format=" + format + "&every=" + every + "&";
         for (var player in players) {
             if (players.hasOwnProperty(player)) {
                 url += player + "=" + player + "&";
@@ -26,17 +41,129 @@
         return url;
     }
 
-    function drawGlassForPlayer(playerName, plots) {
-        canvases[playerName].clear();
-        $.each(plots, function (index, plot) {
-            for (var color in plot) {
-                x = plot[color][0];
-                y = plot[color][1];
-                canvases[playerName].drawPlot(color, x, y);
-//                $('#showdata').append("<p>" + color + " x:" + x + " y:" + y + "</p>");
+    function requestData() {
+        var data = $.extend({}, players);
+        data.seq = lastSeq;
+        data.client = clientId;
+        return data;
+    }
+
+    function applyScreens(data) {
+        if (data == null) {
+            // reaped or superseded request answered with no content, the next poll follows
+            return;
+        }
+        if (allPlayersScreen && Object.keys(data.players).length != Object.keys(players).length) {
+            window.location.reload();
+            return;
+        }
+        $.each(data.players, function (playerName, frame) {
+            applyFrame(playerName, frame);
+        });
+        lastSeq = data.seq;
+    }
+
+    function applyFrame(playerName, frame) {
+        var cells = glasses[playerName];
+        if (frame.g) {
+            cells = decodeCompact(frame);
+            frame.score = frame.s;
+        } else if (frame.h) {
+            cells = decodeHeights(frame);
+            frame.score = frame.s;
+        } else if (frame.plots) {
+            cells = new Object();
+            $.each(frame.plots, function (index, plot) {
+                for (var color in plot) {
+                    cells[plot[color][0] + "," + plot[color][1]] = color;
+                }
+            });
+        } else {
+            if (!cells) {
+                cells = new Object();
+            }
+            $.each(frame.clear, function (index, plot) {
+                delete cells[plot[0] + "," + plot[1]];
+            });
+            $.each(frame.set, function (index, plot) {
+                for (var color in plot) {
+                    cells[plot[color][0] + "," + plot[color][1]] = color;
+                }
+            });
+        }
+        glasses[playerName] = cells;
+        drawGlassForPlayer(playerName, cells);
+        $("#score_" + playerName).text(frame.score);
+    }
+
+    function decodeCompact(frame) {
+        var cells = new Object();
+        var run = 0;
+        var left = frame.c.length > 0 ? frame.c[0][1] : 0;
+        for (var y = 0; y < frame.g.length; y++) {
+            for (var x = 0; x < 10; x++) {
+                if ((frame.g[y] & (1 << x)) == 0) {
+                    continue;
+                }
+                if (left == 0) {
+                    run++;
+                    left = frame.c[run][1];
+                }
+                cells[x + "," + y] = palette[frame.c[run][0]];
+                left--;
+            }
+        }
+        if (frame.f) {
+            var figure = rotateFigure(figures[frame.f[0]], frame.f[1]);
+            for (var row = 0; row < figure.rows.length; row++) {
+                for (var col = 0; col < figure.rows[row].length; col++) {
+                    if (figure.rows[row].charAt(col) == "#") {
+                        cells[(frame.f[2] + col - figure.cx) + "," + (frame.f[3] + figure.cy - row)] = "cyan";
+                    }
+                }
             }
-        })
+        }
+        return cells;
+    }
+
+    function decodeHeights(frame) {
+        var cells = new Object();
+        for (var x = 0; x < frame.h.length; x++) {
+            for (var y = 0; y < frame.h[x]; y++) {
+                cells[x + "," + y] = "blue";
+            }
+        }
+        return cells;
+    }
 
+    function rotateFigure(figure, times) {
+        for (var i = 0; i < times; i++) {
+            var rows = figure.rows;
+            var newRows = [];
+            for (var x = 0; x < rows[0].length; x++) {
+                newRows.push(new Array(rows.length));
+            }
+            var newX = rows.length - figure.cy - 1;
+            var newY = figure.cx;
+            for (var y = 0; y < rows.length; y++) {
+                for (x = 0; x < rows[y].length; x++) {
+                    newRows[x - figure.cx + newY][figure.cy - y + newX] = rows[y].charAt(x);
+                }
+            }
+            for (x = 0; x < newRows.length; x++) {
+                newRows[x] = newRows[x].join("");
+            }
+            figure = {cx:newX, cy:newY, rows:newRows};
+        }
+        return figure;
+    }
+
+    function drawGlassForPlayer(playerName, cells) {
+        canvases[playerName].clear();
+        for (var cell in cells) {
+            var xy = cell.split(",");
+            canvases[playerName].drawPlot(cells[cell], parseInt(xy[0]), parseInt(xy[1]));
+        }
     }
 
     function Canvas(canvasName) {
@@ -63,29 +190,36 @@
         players["${player.name}"] = "${player.name}";
         </c:forEach>
         allPlayersScreen = ${allPlayersScreen};
-        (function poll() {
-            $.ajax({ url:constructUrl(), success:function (data) {
-                if (data == null) {
-                    $("#showdata").text("There is NO data for player available!");
-                    return;
-                }
-                if (allPlayersScreen && Object.keys(data).length != Object.keys(players).length) {
-                    window.location.reload();
-                    return;
+        var pollDelay = 0;
+        if (window.EventSource) {
+            var source = new EventSource(constructUrl("/screen/stream"));
+            source.onmessage = function (event) {
+                applyScreens(JSON.parse(event.data));
+            };
+            source.onerror = function () {
+                // refused (503) streams are not reconnected by the browser, poll instead
+                if (source.readyState == EventSource.CLOSED) {
+                    poll();
                 }
-                $.each(data, function (playerName, value) {
-                    $.each(value, function (key, data) {
-                        if (key == "plots") {
-                            drawGlassForPlayer(playerName, data);
-                        } else {
-                            $("#score_"+playerName).text(data);
-                        }
-                    });
-                });
-            },
-                data:players,
-                dataType:"json", cache:false, complete:poll, timeout:30000 });
-        })();
+            };
+        } else {
+            poll();
+        }
+
+        function poll() {
+            $.ajax({ url:constructUrl("/screen"), data:requestData(), dataType:"json", cache:false, timeout:30000,
+                success:function (data) {
+                    pollDelay = 0;
+                    applyScreens(data);
+                },
+                error:function () {
+                    // rejected (503) or failed, back off so an overloaded server is not polled in a loop
+                    pollDelay = Math.min(pollDelay == 0 ? 1000 : pollDelay * 2, 30000);
+                },
+                complete:function () {
+                    setTimeout(poll, pollDelay * (0.5 + Math.random() / 2));
+                } });
+        }
 
         /*
          $("input").click(function () {
@@ -97,6 +231,30 @@
 </body>
 
 <div id="showdata"></div>
+<c:if test="${pages > 1}">
+    <div class="pagination">
+        <ul>
+            <c:forEach begin="1" end="${pages}" var="i">
+                <c:url var="pageUrl" value="/board">
+                    <c:param name="page" value="${i}"/>
+                    <c:param name="size" value="${size}"/>
+                    <c:if test="${not empty param.format}"><c:param name="format" value="${param.format}"/></c:if>
+                    <c:if test="${not empty param.every}"><c:param name="every" value="${param.every}"/></c:if>
+                </c:url>
+                <li class="${i == page ? 'active' : ''}"><a href="${pageUrl}">${i}</a></li>
+            </c:forEach>
+        </ul>
+    </div>
+</c:if>
+<c:if test="${not empty token}">
+    <div class="alert alert-info">
+        Bot token: <strong>${token}</strong>. Use it to send commands with
+        <code>POST /command/{player}?token=...&amp;commands=left=1,rotate=1,drop</code>,
+        read the state with <code>GET /command/{player}?token=...</code>
+        or open the push channel <code>ws://host/bot?name={player}&amp;token=...</code>.
+        Leave URL empty during registration if your bot cannot accept callbacks.
+    </div>
+</c:if>
 <c:forEach items="${players}" var="player">
     <div id="div_${player.name}">
         <table>
@@ -13,6 +13,12 @@
         <tr>
             <td><form:input path="callbackUrl"/></td>
         </tr>
+        <tr>
+            <td>Bot token (to change the URL of a registered player):</td>
+        </tr>
+        <tr>
+            <td><input type="password" name="token"/></td>
+        </tr>
         <tr>
             <td colspan="3">
                 <input type="submit" value="Register"/>
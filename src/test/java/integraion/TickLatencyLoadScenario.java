@@ -0,0 +1,308 @@
+package integraion;
+
+import net.tetris.services.BotFarm;
+import net.tetris.services.Player;
+import net.tetris.services.PlayerController;
+import net.tetris.services.PlayerService;
+import net.tetris.services.TickMetrics;
+import net.tetris.services.TimerService;
+import org.eclipse.jetty.client.ContentExchange;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.webapp.WebAppContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tournament sized load on the real web application: embedded Jetty with the Spring context,
+ * simulated bots from {@link BotFarm} and spectators long polling the screens of a few bots each.
+ * Ticks are driven at a fixed rate for a fixed number of ticks, then p50/p99/max of tick duration,
+ * screen delivery (tick start to response at the spectator) and bot round trip (callback request sent to
+ * its complete response) are written as JSON to <code>target/load-test-report.json</code>.
+ * <p/>
+ * Not a unit test, run it with the load-test profile:
+ * <code>mvn -Pload-test verify -Dload.bots=2000 -Dload.spectators=500 -Dload.ticks=120</code>
+ */
+public class TickLatencyLoadScenario {
+    private static final int BOTS = Integer.getInteger("load.bots", 1000);
+    private static final int SPECTATORS = Integer.getInteger("load.spectators", 100);
+    private static final int PLAYERS_PER_SPECTATOR = Integer.getInteger("load.playersPerSpectator", 4);
+    private static final int TICKS = Integer.getInteger("load.ticks", 30);
+    private static final int TICK_MILLIS = Integer.getInteger("load.tickMillis", 1000);
+    private static final int BOT_LATENCY_MILLIS = Integer.getInteger("load.botLatencyMillis", 50);
+    private static final String REPORT = System.getProperty("load.report", "target/load-test-report.json");
+
+    private Server server;
+    private ServletContext servletContext;
+    private PlayerService playerService;
+    private TickMetrics tickMetrics;
+    private HttpClient client;
+    private BotFarm farm;
+    private String serverUrl;
+
+    private volatile long tickStarted;
+    private volatile boolean running;
+    private final Samples screenDelivery = new Samples();
+    private final Samples botRoundTrip = new Samples();
+    private final AtomicLong screenBytes = new AtomicLong();
+    private final AtomicLong screenErrors = new AtomicLong();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server(0);
+        QueuedThreadPool threadPool = new QueuedThreadPool(Math.max(200, SPECTATORS * 2));
+        server.setThreadPool(threadPool);
+        WebAppContext context = new WebAppContext("src/main/webapp", "");
+        context.addEventListener(new ServletContextListener() {
+            @Override
+            public void contextInitialized(ServletContextEvent sce) {
+                servletContext = sce.getServletContext();
+            }
+
+            @Override
+            public void contextDestroyed(ServletContextEvent sce) {
+            }
+        });
+        server.setHandler(context);
+        server.start();
+        serverUrl = "http://localhost:" + server.getConnectors()[0].getLocalPort();
+
+        WebApplicationContext applicationContext = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext);
+        applicationContext.getBean(TimerService.class).pause();
+        playerService = applicationContext.getBean(PlayerService.class);
+        tickMetrics = applicationContext.getBean(TickMetrics.class);
+        applicationContext.getBean(PlayerController.class).setRoundTripListener(new PlayerController.RoundTripListener() {
+            @Override
+            public void responded(Player player, long nanos) {
+                botRoundTrip.add(nanos);
+            }
+        });
+
+        client = new HttpClient();
+        client.setConnectorType(HttpClient.CONNECTOR_SELECT_CHANNEL);
+        client.setMaxConnectionsPerAddress(SPECTATORS + 16);
+        client.setTimeout(Math.max(30000, TICK_MILLIS * 10));
+        client.start();
+
+        farm = new BotFarm().bots(BOTS)
+                .latency(BotFarm.LatencyDistribution.exponential(BOT_LATENCY_MILLIS))
+                .strategy(BotFarm.PlayStrategy.RANDOM);
+        farm.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        running = false;
+        if (client != null) {
+            client.stop();
+        }
+        if (farm != null) {
+            farm.stop();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldRunTournamentAtTickRate() throws Exception {
+        farm.registerWith(playerService);
+        running = true;
+        for (int i = 0; i < SPECTATORS; i++) {
+            watch(spectatorQuery(i));
+        }
+
+        Samples ticks = new Samples();
+        long metricsTicks = tickMetrics.getTicks();
+        long[] phaseNanos = phaseNanos();
+        long next = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            }
+            tickStarted = System.nanoTime();
+            playerService.nextStepForAllGames();
+            ticks.add(System.nanoTime() - tickStarted);
+            next += TICK_MILLIS * 1000000L;
+        }
+        running = false;
+        Thread.sleep(Math.min(TICK_MILLIS, 1000));
+
+        writeReport(ticks, tickMetrics.getTicks() - metricsTicks, phaseNanos);
+
+        assertEquals(TICKS, ticks.size());
+        assertTrue("No screens delivered", screenDelivery.size() > 0);
+        assertTrue("No bot responses", botRoundTrip.size() > 0);
+    }
+
+    private String spectatorQuery(int spectator) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < PLAYERS_PER_SPECTATOR; i++) {
+            if (i > 0) {
+                query.append('&');
+            }
+            query.append("bot-").append((spectator * PLAYERS_PER_SPECTATOR + i) % BOTS);
+        }
+        return query.toString();
+    }
+
+    /**
+     * Long polls the screens, asking again as soon as a screen arrives
+     */
+    private void watch(final String query) throws IOException {
+        if (!running) {
+            return;
+        }
+        ContentExchange exchange = new ContentExchange(true) {
+            @Override
+            protected void onResponseComplete() throws IOException {
+                if (getResponseStatus() == 200) {
+                    screenDelivery.add(System.nanoTime() - tickStarted);
+                    screenBytes.addAndGet(getResponseContentBytes() == null ? 0 : getResponseContentBytes().length);
+                }
+                watch(query);
+            }
+
+            @Override
+            protected void onExpire() {
+                screenErrors.incrementAndGet();
+                rewatch(query);
+            }
+
+            @Override
+            protected void onException(Throwable x) {
+                screenErrors.incrementAndGet();
+                rewatch(query);
+            }
+
+            @Override
+            protected void onConnectionFailed(Throwable x) {
+                screenErrors.incrementAndGet();
+                rewatch(query);
+            }
+        };
+        exchange.setMethod("GET");
+        exchange.setURL(serverUrl + "/screen?" + query);
+        client.send(exchange);
+    }
+
+    private void rewatch(String query) {
+        try {
+            watch(query);
+        } catch (IOException e) {
+            screenErrors.incrementAndGet();
+        }
+    }
+
+    private long[] phaseNanos() {
+        TickMetrics.Phase[] phases = TickMetrics.Phase.values();
+        long[] nanos = new long[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            nanos[i] = tickMetrics.getPhaseNanos(phases[i]);
+        }
+        return nanos;
+    }
+
+    /**
+     * @param baselinePhaseNanos phase totals taken before the measured ticks, so earlier ticks are left out
+     */
+    private void writeReport(Samples ticks, long measuredTicks, long[] baselinePhaseNanos) throws IOException {
+        StringBuilder report = new StringBuilder("{\n");
+        report.append("  \"config\": {\"bots\": ").append(BOTS)
+                .append(", \"spectators\": ").append(SPECTATORS)
+                .append(", \"playersPerSpectator\": ").append(PLAYERS_PER_SPECTATOR)
+                .append(", \"ticks\": ").append(TICKS)
+                .append(", \"tickMillis\": ").append(TICK_MILLIS)
+                .append(", \"botLatencyMillis\": ").append(BOT_LATENCY_MILLIS).append("},\n");
+        report.append("  \"tickMillis\": ").append(ticks.toJson()).append(",\n");
+        report.append("  \"screenDeliveryMillis\": ").append(screenDelivery.toJson()).append(",\n");
+        report.append("  \"screenBytes\": ").append(screenBytes.get()).append(",\n");
+        report.append("  \"screenErrors\": ").append(screenErrors.get()).append(",\n");
+        report.append("  \"botRoundTripMillis\": ").append(botRoundTrip.toJson()).append(",\n");
+        report.append("  \"botRequests\": ").append(farm.getRequests()).append(",\n");
+        report.append("  \"botFailures\": ").append(farm.getFailures()).append(",\n");
+        report.append("  \"phaseMeanMillis\": {");
+        TickMetrics.Phase[] phases = TickMetrics.Phase.values();
+        long[] phaseNanos = phaseNanos();
+        for (int i = 0; i < phases.length; i++) {
+            long measuredNanos = phaseNanos[i] - baselinePhaseNanos[i];
+            report.append(i > 0 ? ", " : "").append('"').append(phases[i].getName()).append("\": ")
+                    .append(millis(measuredTicks == 0 ? 0 : measuredNanos / measuredTicks));
+        }
+        report.append("}\n}\n");
+
+        File file = new File(REPORT);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(report.toString());
+        }
+        System.out.print(report);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Durations in nanoseconds from many threads
+     */
+    private static class Samples {
+        private final List<Long> values = Collections.synchronizedList(new ArrayList<Long>());
+
+        void add(long nanos) {
+            values.add(nanos);
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        String toJson() {
+            long[] sorted;
+            synchronized (values) {
+                sorted = new long[values.size()];
+                for (int i = 0; i < sorted.length; i++) {
+                    sorted[i] = values.get(i);
+                }
+            }
+            Arrays.sort(sorted);
+            if (sorted.length == 0) {
+                return "{\"count\": 0}";
+            }
+            return "{\"count\": " + sorted.length
+                    + ", \"p50\": " + millis(percentile(sorted, 50))
+                    + ", \"p99\": " + millis(percentile(sorted, 99))
+                    + ", \"max\": " + millis(sorted[sorted.length - 1]) + "}";
+        }
+
+        private static long percentile(long[] sorted, int percent) {
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package net.tetris;
+
+import org.junit.Assume;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures bytes allocated by the current thread per operation with the per-thread allocation counter of
+ * the JVM and checks them against the budgets in <code>allocation-budgets.properties</code>.
+ * A budget can be overridden with the system property of the same name.
+ * <p/>
+ * Operations are warmed up first, so the JIT has compiled them and eliminated what escape analysis can.
+ */
+public class AllocationBudget {
+    private static final String BUDGETS = "/allocation-budgets.properties";
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final Properties budgets = new Properties();
+
+    public AllocationBudget() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        try (InputStream in = AllocationBudget.class.getResourceAsStream(BUDGETS)) {
+            budgets.load(in);
+        }
+    }
+
+    /**
+     * Fails when the operation allocates more bytes per run than the budget
+     */
+    public void assertWithin(String budget, int warmups, int runs, Runnable operation) {
+        long limit = getBudget(budget);
+        long allocated = measure(warmups, runs, operation);
+        assertTrue(budget + " allocates " + allocated + " bytes per run, budget is " + limit, allocated <= limit);
+    }
+
+    long getBudget(String budget) {
+        String value = System.getProperty(budget, budgets.getProperty(budget));
+        if (value == null) {
+            throw new IllegalArgumentException("No allocation budget " + budget + " in " + BUDGETS);
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    /**
+     * @return bytes allocated per run, rounded down
+     */
+    public long measure(int warmups, int runs, Runnable operation) {
+        for (int i = 0; i < warmups; i++) {
+            operation.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long overhead = allocatedBetweenReads(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < runs; i++) {
+            operation.run();
+        }
+        long after = threads.getThreadAllocatedBytes(threadId);
+        return Math.max(0, after - before - overhead) / runs;
+    }
+
+    private long allocatedBetweenReads(long threadId) {
+        long first = threads.getThreadAllocatedBytes(threadId);
+        long second = threads.getThreadAllocatedBytes(threadId);
+        return second - first;
+    }
+}
@@ -0,0 +1,68 @@
+package net.tetris.dom;
+
+import net.tetris.AllocationBudget;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class AllocationTest {
+    private static final int FULL_ROW = 0b11111111110;
+
+    private AllocationBudget budget;
+
+    @Before
+    public void setUp() throws IOException {
+        budget = new AllocationBudget();
+    }
+
+    @Test
+    public void shouldStepGameWithinBudget() {
+        final TetrisGame game = new TetrisGame(new ReusedFigures(), new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT));
+
+        budget.assertWithin("tetris.game.nextStep", 50000, 100000, new Runnable() {
+            @Override
+            public void run() {
+                game.nextStep();
+            }
+        });
+    }
+
+    @Test
+    public void shouldDropWithinBudget() {
+        final TetrisGlass glass = new TetrisGlass(TetrisGame.GLASS_WIDTH, TetrisGame.GLASS_HEIGHT);
+        final Figure figure = Figure.Type.I.createNewFigure();
+        final int[] rows = new int[TetrisGame.GLASS_HEIGHT];
+        for (int y = 0; y < 4; y++) {
+            rows[y] = FULL_ROW & ~(1 << TetrisGame.GLASS_WIDTH);
+        }
+
+        budget.assertWithin("tetris.glass.drop", 50000, 100000, new Runnable() {
+            @Override
+            public void run() {
+                glass.setOccupiedRows(rows);
+                glass.drop(figure, 0, TetrisGame.GLASS_HEIGHT - 1);
+            }
+        });
+    }
+
+    /**
+     * Hands out the same figure of every type, so only the game is measured
+     */
+    private static class ReusedFigures implements FigureQueue {
+        private final Figure[] figures = new Figure[Figure.Type.values().length];
+        private int next;
+
+        ReusedFigures() {
+            for (Figure.Type type : Figure.Type.values()) {
+                figures[type.ordinal()] = type.createNewFigure();
+            }
+        }
+
+        @Override
+        public Figure next() {
+            next = (next + 1) % figures.length;
+            return figures[next];
+        }
+    }
+}
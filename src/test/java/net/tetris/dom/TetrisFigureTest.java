@@ -63,6 +63,19 @@ public class TetrisFigureTest {
         assertThat(figure.getRowCodes()).isEqualTo(new int[]{0b1111});
     }
 
+    @Test
+    public void shouldCountRotations() {
+        Figure figure = Figure.Type.T.createNewFigure();
+        assertThat(figure.getRotation()).isEqualTo(0);
+
+        figure.rotate(3);
+        assertThat(figure.getRotation()).isEqualTo(3);
+
+        figure.rotate(2);
+        assertThat(figure.getRotation()).isEqualTo(1);
+        assertThat(figure.getCopy().getRotation()).isEqualTo(1);
+    }
+
     @Test
     public void shouldRotateFigureJ() {
         Figure figure = Figure.Type.J.createNewFigure();
@@ -0,0 +1,256 @@
+package net.tetris.services;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thousands of simulated bots served by a single embedded Jetty: bot <code>i</code> answers on <code>/bot/i</code>.
+ * Responses are delayed asynchronously, so slow bots don't occupy server threads.
+ * A share of bots may be registered with a refusing address to simulate dead callback URLs.
+ */
+public class BotFarm {
+    private int bots = 100;
+    private LatencyDistribution latency = LatencyDistribution.fixed(0);
+    private double failureRate;
+    private double deadRate;
+    private int responseSize;
+    private PlayStrategy strategy = PlayStrategy.RANDOM;
+    private long seed = 42;
+
+    private Server server;
+    private ScheduledExecutorService scheduler;
+    private int port;
+    private int deadPort;
+    private Random random;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    public BotFarm bots(int bots) {
+        this.bots = bots;
+        return this;
+    }
+
+    public BotFarm latency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param failureRate share of requests answered with HTTP 500
+     */
+    public BotFarm failureRate(double failureRate) {
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param deadRate share of bots registered with an address refusing connections
+     */
+    public BotFarm deadRate(double deadRate) {
+        this.deadRate = deadRate;
+        return this;
+    }
+
+    /**
+     * @param responseSize minimal response size in bytes, commands are padded with spaces
+     */
+    public BotFarm responseSize(int responseSize) {
+        this.responseSize = responseSize;
+        return this;
+    }
+
+    public BotFarm strategy(PlayStrategy strategy) {
+        this.strategy = strategy;
+        return this;
+    }
+
+    public BotFarm seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public void start() throws Exception {
+        random = new Random(seed);
+        scheduler = Executors.newScheduledThreadPool(2);
+        server = new Server();
+        server.setThreadPool(new QueuedThreadPool(64));
+        SelectChannelConnector connector = new SelectChannelConnector();
+        connector.setPort(0);
+        connector.setAcceptQueueSize(4096);
+        server.addConnector(connector);
+        ServletContextHandler root = new ServletContextHandler(server, "/");
+        ServletHolder holder = new ServletHolder(new BotServlet());
+        holder.setAsyncSupported(true);
+        root.addServlet(holder, "/bot/*");
+        server.start();
+        port = connector.getLocalPort();
+        deadPort = findFreePort();
+    }
+
+    public void stop() throws Exception {
+        scheduler.shutdownNow();
+        server.stop();
+    }
+
+    /**
+     * Registers all bots as players named <code>bot-i</code>
+     */
+    public List<Player> registerWith(PlayerService playerService) {
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < bots; i++) {
+            int botPort = random.nextDouble() < deadRate ? deadPort : port;
+            players.add(playerService.addNewPlayer("bot-" + i, "http://localhost:" + botPort + "/bot/" + i));
+        }
+        return Collections.unmodifiableList(players);
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private synchronized long nextDelay() {
+        return latency.nextDelay(random);
+    }
+
+    private synchronized String nextCommands() {
+        return strategy.commands(random);
+    }
+
+    private class BotServlet extends HttpServlet {
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+            requests.incrementAndGet();
+            final boolean fail = nextDouble() < failureRate;
+            final String commands = nextCommands();
+            long delay = nextDelay();
+            if (delay <= 0) {
+                respond(resp, fail, commands);
+                return;
+            }
+            final AsyncContext asyncContext = req.startAsync();
+            asyncContext.setTimeout(0);
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        respond((HttpServletResponse) asyncContext.getResponse(), fail, commands);
+                    } catch (IOException ignored) {
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void respond(HttpServletResponse resp, boolean fail, String commands) throws IOException {
+            if (fail) {
+                failures.incrementAndGet();
+                resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return;
+            }
+            StringBuilder body = new StringBuilder(commands);
+            while (body.length() < responseSize) {
+                body.append(' ');
+            }
+            bytesSent.addAndGet(body.length());
+            resp.getWriter().print(body);
+        }
+    }
+
+    public static abstract class LatencyDistribution {
+        abstract long nextDelay(Random random);
+
+        public static LatencyDistribution fixed(final long millis) {
+            return new LatencyDistribution() {
+                @Override
+                long nextDelay(Random random) {
+                    return millis;
+                }
+            };
+        }
+
+        public static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+            return new LatencyDistribution() {
+                @Override
+                long nextDelay(Random random) {
+                    return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+                }
+            };
+        }
+
+        public static LatencyDistribution exponential(final double meanMillis) {
+            return new LatencyDistribution() {
+                @Override
+                long nextDelay(Random random) {
+                    return (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+                }
+            };
+        }
+    }
+
+    public enum PlayStrategy {
+        IDLE {
+            @Override
+            String commands(Random random) {
+                return "";
+            }
+        }, DROP {
+            @Override
+            String commands(Random random) {
+                return "drop";
+            }
+        }, RANDOM {
+            @Override
+            String commands(Random random) {
+                StringBuilder commands = new StringBuilder();
+                commands.append(random.nextBoolean() ? "left=" : "right=").append(random.nextInt(5));
+                commands.append(",rotate=").append(random.nextInt(4));
+                if (random.nextInt(4) == 0) {
+                    commands.append(",drop");
+                }
+                return commands.toString();
+            }
+        };
+
+        abstract String commands(Random random);
+    }
+}
@@ -0,0 +1,25 @@
+package net.tetris.services;
+
+import org.springframework.context.annotation.Bean;
+
+/**
+ * Real player controller calling bots of the {@link BotFarm}
+ */
+//@Configuration
+public class BotFarmPlayerControllerConfiguration {
+    private final CallbackCircuitBreaker circuitBreaker = new CallbackCircuitBreaker();
+
+    @Bean(name = "callbackCircuitBreaker")
+    public CallbackCircuitBreaker callbackCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Bean(name = "playerController")
+    public PlayerController playerController() throws Exception {
+        PlayerController playerController = new PlayerController();
+        playerController.setTimeout(2000);
+        playerController.setCircuitBreaker(circuitBreaker);
+        playerController.init();
+        return playerController;
+    }
+}
@@ -0,0 +1,96 @@
+package net.tetris.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Drives real ticks against the bot farm. Scale it up with
+ * <code>mvn test -Dtest=BotFarmTest -Dbotfarm.bots=5000 -Dbotfarm.ticks=30</code>
+ */
+@ContextConfiguration(classes = {PlayerService.class,
+        MockScreenSenderConfiguration.class, BotFarmPlayerControllerConfiguration.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+public class BotFarmTest {
+    private static final int BOTS = Integer.getInteger("botfarm.bots", 200);
+    private static final int TICKS = Integer.getInteger("botfarm.ticks", 4);
+    private static final int TICK_MILLIS = Integer.getInteger("botfarm.tickMillis", 300);
+
+    @Autowired
+    private PlayerService playerService;
+
+    @Autowired
+    private CallbackCircuitBreaker circuitBreaker;
+
+    private BotFarm farm;
+
+    @Before
+    public void setUp() throws Exception {
+        playerService.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        farm.stop();
+    }
+
+    @Test
+    public void shouldRequestControlFromAllBotsEveryTick() throws Exception {
+        farm = new BotFarm().bots(BOTS)
+                .latency(BotFarm.LatencyDistribution.uniform(0, 20))
+                .strategy(BotFarm.PlayStrategy.IDLE);
+        farm.start();
+        farm.registerWith(playerService);
+
+        runTicks(TICKS);
+
+        awaitRequests((long) BOTS * TICKS, 5000);
+        assertEquals((long) BOTS * TICKS, farm.getRequests());
+    }
+
+    @Test
+    public void shouldStopCallingDeadBots() throws Exception {
+        farm = new BotFarm().bots(BOTS).deadRate(0.5).failureRate(0.1)
+                .latency(BotFarm.LatencyDistribution.exponential(20))
+                .responseSize(1024)
+                .strategy(BotFarm.PlayStrategy.DROP);
+        farm.start();
+        List<Player> players = farm.registerWith(playerService);
+
+        runTicks(TICKS);
+
+        int dead = 0;
+        for (Player player : players) {
+            if (circuitBreaker.isOpen(player)) {
+                dead++;
+            }
+        }
+        assertTrue("Dead bots should be cut off, found " + dead, dead > BOTS / 4);
+        assertTrue(farm.getRequests() <= (long) (BOTS - dead) * TICKS);
+        assertTrue(farm.getFailures() > 0);
+    }
+
+    private void awaitRequests(long expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (farm.getRequests() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private void runTicks(int ticks) throws InterruptedException {
+        for (int i = 0; i < ticks; i++) {
+            playerService.nextStepForAllGames();
+            Thread.sleep(TICK_MILLIS);
+        }
+        Thread.sleep(TICK_MILLIS);
+    }
+}
@@ -0,0 +1,147 @@
+package net.tetris.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class CallbackCircuitBreakerTest {
+
+    private TestCircuitBreaker breaker;
+    private Player vasya;
+
+    @Before
+    public void setUp() throws Exception {
+        breaker = new TestCircuitBreaker();
+        breaker.setFailureThreshold(2);
+        breaker.setInitialBackoff(1000);
+        breaker.setMaxBackoff(3000);
+        vasya = new Player("vasya", "http://vasya:1234", new PlayerScores());
+    }
+
+    @Test
+    public void shouldAllowRequestsWhenNoFailures() {
+        assertTrue(breaker.allowRequest(vasya));
+        assertFalse(breaker.isOpen(vasya));
+    }
+
+    @Test
+    public void shouldKeepClosedWhenFailuresBelowThreshold() {
+        breaker.requestFailed(vasya, "refused");
+
+        assertTrue(breaker.allowRequest(vasya));
+    }
+
+    @Test
+    public void shouldOpenWhenFailuresReachThreshold() {
+        failTimes(2);
+
+        assertTrue(breaker.isOpen(vasya));
+        assertFalse(breaker.allowRequest(vasya));
+    }
+
+    @Test
+    public void shouldLetSingleProbeThroughWhenBackoffExpired() {
+        failTimes(2);
+        breaker.time += 1000;
+
+        assertTrue(breaker.allowRequest(vasya));
+        assertFalse(breaker.allowRequest(vasya));
+    }
+
+    @Test
+    public void shouldCloseWhenProbeSucceeded() {
+        failTimes(2);
+        breaker.time += 1000;
+        breaker.allowRequest(vasya);
+
+        breaker.requestSucceeded(vasya);
+
+        assertFalse(breaker.isOpen(vasya));
+        assertTrue(breaker.allowRequest(vasya));
+    }
+
+    @Test
+    public void shouldDoubleBackoffWhenProbeFailed() {
+        failTimes(2);
+        breaker.time += 1000;
+        breaker.allowRequest(vasya);
+
+        breaker.requestFailed(vasya, "refused");
+
+        breaker.time += 1999;
+        assertFalse(breaker.allowRequest(vasya));
+        breaker.time += 1;
+        assertTrue(breaker.allowRequest(vasya));
+    }
+
+    @Test
+    public void shouldLimitBackoffByMaximum() {
+        failTimes(2);
+        for (int i = 0; i < 5; i++) {
+            breaker.time += 10000;
+            breaker.allowRequest(vasya);
+            breaker.requestFailed(vasya, "refused");
+        }
+
+        breaker.time += 3000;
+        assertTrue(breaker.allowRequest(vasya));
+    }
+
+    @Test
+    public void shouldResetWhenCallbackUrlChanged() {
+        failTimes(2);
+
+        vasya.setCallbackUrl("http://vasya:4321");
+
+        assertTrue(breaker.allowRequest(vasya));
+        assertFalse(breaker.isOpen(vasya));
+    }
+
+    @Test
+    public void shouldSummarizeFailuresOncePerLogInterval() {
+        breaker.setLogInterval(60000);
+        breaker.takeReport(breaker.time);
+        for (int i = 0; i < 7; i++) {
+            breaker.requestFailed(new Player("bot" + i, "http://bot" + i, new PlayerScores()), "refused");
+        }
+        breaker.time += 59999;
+        assertNull(breaker.takeReport(breaker.time));
+
+        breaker.time += 1;
+        String report = breaker.takeReport(breaker.time);
+
+        assertTrue(report, report.startsWith("7 player callback failures in the last 60000 ms, 7 players failing: "));
+        assertTrue(report, report.endsWith(", ..."));
+        breaker.time += 60000;
+        assertNull(breaker.takeReport(breaker.time));
+    }
+
+    @Test
+    public void shouldForgetPlayersWhenCleared() {
+        failTimes(2);
+
+        breaker.clear();
+
+        assertFalse(breaker.isOpen(vasya));
+        assertTrue(breaker.allowRequest(vasya));
+    }
+
+    private void failTimes(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.allowRequest(vasya);
+            breaker.requestFailed(vasya, "refused");
+        }
+    }
+
+    private static class TestCircuitBreaker extends CallbackCircuitBreaker {
+        private long time = 100000;
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.util.concurrent.locks.ReentrantLock;
 public class FakeHttpServer {
 
     private String response;
+    private int status = HttpServletResponse.SC_OK;
 //    private final HttpServer server;
     private StringWriter requestWriter = new StringWriter();
     private Server jettyServer = new Server();
@@ -41,6 +42,7 @@ public class FakeHttpServer {
                 lock.lock();
                 try {
                     parameters = req.getParameterMap();
+                    resp.setStatus(status);
                     resp.getWriter().print(response);
                     requestProcessed.signal();
                 } finally {
@@ -76,6 +78,10 @@ public class FakeHttpServer {
         this.response = response;
     }
 
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
     public void stop() throws Exception {
         jettyServer.stop();
     }
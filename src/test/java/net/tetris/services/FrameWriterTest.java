@@ -0,0 +1,53 @@
+package net.tetris.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+
+import static junit.framework.Assert.assertEquals;
+
+public class FrameWriterTest {
+
+    private FrameWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        writer = new FrameWriter(4);
+    }
+
+    @Test
+    public void shouldWriteNumbers() throws UnsupportedEncodingException {
+        writer.write(0).write(',').write(7).write(',').write(-500).write(',').write(1234567890)
+                .write(',').write(Integer.MIN_VALUE);
+
+        assertEquals("0,7,-500,1234567890,-2147483648", written());
+    }
+
+    @Test
+    public void shouldEscapeStrings() throws UnsupportedEncodingException {
+        writer.writeString("va\"s\\ya\n");
+
+        assertEquals("\"va\\\"s\\\\ya\\u000a\"", written());
+    }
+
+    @Test
+    public void shouldWriteNonAsciiStringsAsUtf8() throws UnsupportedEncodingException {
+        writer.writeString("вася-1");
+
+        assertEquals("\"вася-1\"", written());
+    }
+
+    @Test
+    public void shouldReuseBufferWhenReset() throws UnsupportedEncodingException {
+        writer.writeString("first");
+
+        writer.reset().write(1);
+
+        assertEquals("1", written());
+    }
+
+    private String written() throws UnsupportedEncodingException {
+        return new String(writer.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,138 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import net.tetris.dom.Joystick;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class GameReplayTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedGameJournal journal;
+    private PlayerController playerController;
+    private PlayerService playerService;
+
+    @Before
+    public void setUp() throws IOException {
+        journal = new MappedGameJournal();
+        journal.setDirectory(folder.getRoot().getAbsolutePath());
+        journal.open();
+        playerController = mock(PlayerController.class);
+        playerService = new PlayerService(mock(ScreenSender.class), playerController, journal);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        journal.close();
+    }
+
+    @Test
+    public void shouldReproduceGameAtLastTick() throws IOException {
+        playerService.addNewPlayer("vasya", "http://vasya:1234");
+        playerService.addNewPlayer("petya", "http://petya:1234");
+        play(80);
+
+        GameReplay replay = GameReplay.load(journal, "petya");
+        replay.runTo(replay.getLastTick());
+
+        assertEquals(80, replay.getTick());
+        assertGameEquals(1, replay);
+        assertEquals(-1, replay.getDivergedTick());
+    }
+
+    @Test
+    public void shouldJumpToTick() throws IOException {
+        playerService.addNewPlayer("vasya", "http://vasya:1234");
+        play(30);
+        String droppedAt30 = playerService.getGlasses().get(0).getDroppedPlots().toString();
+        play(30);
+
+        GameReplay replay = GameReplay.load(journal, "vasya");
+        replay.runTo(60);
+        assertGameEquals(0, replay);
+        replay.runTo(30);
+
+        assertEquals(30, replay.getTick());
+        assertEquals(droppedAt30, replay.getDroppedPlots().toString());
+    }
+
+    @Test
+    public void shouldStartGameFromRegistrationTick() throws IOException {
+        playerService.addNewPlayer("vasya", "http://vasya:1234");
+        play(10);
+        playerService.addNewPlayer("petya", "http://petya:1234");
+        play(40);
+
+        GameReplay replay = GameReplay.load(journal, "petya");
+        replay.runTo(1000);
+
+        assertEquals(10, replay.getRegisteredTick());
+        assertEquals(50, replay.getTick());
+        assertGameEquals(1, replay);
+    }
+
+    @Test
+    public void shouldReportFirstTickGameDiffersFromRecordedState() throws IOException {
+        playerService.addNewPlayer("vasya", "http://vasya:1234");
+        play(15);
+        journal.stateRecorded(0, PlayerService.glassHash(playerService.getGlasses().get(0)) + 1,
+                playerService.getPlayers().get(0).getScore());
+        play(15);
+
+        GameReplay replay = GameReplay.load(journal, "vasya");
+        replay.runTo(14);
+        assertEquals(-1, replay.getDivergedTick());
+        replay.runTo(30);
+
+        assertEquals(15, replay.getDivergedTick());
+    }
+
+    @Test
+    public void shouldReportUnknownPlayer() throws IOException {
+        playerService.addNewPlayer("vasya", "http://vasya:1234");
+
+        assertFalse(GameReplay.load(journal, "petya").isRecorded());
+    }
+
+    private void assertGameEquals(int player, GameReplay replay) {
+        assertEquals(playerService.getPlayers().get(player).getScore(), replay.getScore());
+        assertEquals(playerService.getGlasses().get(player).getDroppedPlots().toString(), replay.getDroppedPlots().toString());
+        assertEquals(playerService.getGlasses().get(player).getCurrentFigurePlots().toString(),
+                replay.getCurrentFigurePlots().toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void play(int ticks) throws IOException {
+        for (int i = 0; i < ticks; i++) {
+            playerService.nextStepForAllGames();
+            ArgumentCaptor<Joystick> joystickCaptor = ArgumentCaptor.forClass(Joystick.class);
+            verify(playerController, Mockito.atLeast(0)).requestControl(any(Player.class), any(Figure.Type.class),
+                    Matchers.anyInt(), Matchers.anyInt(), joystickCaptor.capture(), any(int[].class));
+            int player = 0;
+            for (Joystick joystick : joystickCaptor.getAllValues()) {
+                if ((i + player++) % 4 == 0) {
+                    joystick.drop();
+                } else {
+                    joystick.moveRight(i % 5);
+                    joystick.rotate(i % 3);
+                }
+            }
+            Mockito.reset(playerController);
+        }
+    }
+}
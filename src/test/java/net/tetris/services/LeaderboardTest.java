@@ -0,0 +1,145 @@
+package net.tetris.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+public class LeaderboardTest {
+    private Leaderboard leaderboard;
+
+    @Before
+    public void setUp() {
+        leaderboard = new Leaderboard();
+    }
+
+    @Test
+    public void shouldOrderByScore() {
+        leaderboard.update("vasya", 100);
+        leaderboard.update("petya", 300);
+        leaderboard.update("katya", 200);
+
+        assertTop("petya:300:1, katya:200:2, vasya:100:3", leaderboard.getTop(0, 10));
+        assertEquals(3, leaderboard.size());
+    }
+
+    @Test
+    public void shouldShareRankForEqualScores() {
+        leaderboard.update("vasya", 100);
+        leaderboard.update("petya", 200);
+        leaderboard.update("katya", 100);
+        leaderboard.update("masha", 50);
+
+        assertTop("petya:200:1, katya:100:2, vasya:100:2, masha:50:4", leaderboard.getTop(0, 10));
+        assertEquals(2, leaderboard.getRank("vasya"));
+        assertEquals(4, leaderboard.getRank("masha"));
+    }
+
+    @Test
+    public void shouldRankFromStartOfPage() {
+        leaderboard.update("vasya", 100);
+        leaderboard.update("petya", 200);
+        leaderboard.update("katya", 100);
+        leaderboard.update("masha", 50);
+
+        assertTop("vasya:100:2, masha:50:4", leaderboard.getTop(2, 2));
+        assertTop("", leaderboard.getTop(4, 2));
+    }
+
+    @Test
+    public void shouldMovePlayerOnUpdate() {
+        leaderboard.update("vasya", 100);
+        leaderboard.update("petya", 200);
+
+        leaderboard.update("vasya", 300);
+
+        assertTop("vasya:300:1, petya:200:2", leaderboard.getTop(0, 10));
+        assertEquals(2, leaderboard.size());
+    }
+
+    @Test
+    public void shouldRemovePlayer() {
+        leaderboard.update("vasya", 100);
+        leaderboard.update("petya", 200);
+
+        leaderboard.remove("petya");
+
+        assertTop("vasya:100:1", leaderboard.getTop(0, 10));
+        assertEquals(0, leaderboard.getRank("petya"));
+        assertNull(leaderboard.getEntry("petya"));
+    }
+
+    @Test
+    public void shouldChangeVersionOnlyWhenChangesPublished() {
+        leaderboard.update("vasya", 100);
+        leaderboard.publish(5);
+        assertEquals(5, leaderboard.getVersion());
+
+        leaderboard.update("vasya", 100);
+        leaderboard.publish(6);
+        assertEquals(5, leaderboard.getVersion());
+
+        leaderboard.update("vasya", 110);
+        leaderboard.publish(7);
+        assertEquals(7, leaderboard.getVersion());
+    }
+
+    @Test
+    public void shouldAgreeWithSortedScores() {
+        Random random = new Random(42);
+        final Map<String, Integer> scores = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String name = "player" + random.nextInt(500);
+            if (random.nextInt(10) == 0) {
+                leaderboard.remove(name);
+                scores.remove(name);
+            } else {
+                int score = random.nextInt(2000) - 500;
+                leaderboard.update(name, score);
+                scores.put(name, score);
+            }
+        }
+
+        List<String> names = new ArrayList<>(scores.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                int byScore = Integer.compare(scores.get(second), scores.get(first));
+                return byScore != 0 ? byScore : first.compareTo(second);
+            }
+        });
+        assertEquals(names.size(), leaderboard.size());
+        List<Leaderboard.Entry> top = leaderboard.getTop(0, names.size());
+        for (int position = 0; position < names.size(); position++) {
+            String name = names.get(position);
+            int rank = position + 1;
+            while (rank > 1 && scores.get(names.get(rank - 2)).equals(scores.get(name))) {
+                rank--;
+            }
+            assertEquals(name, top.get(position).getName());
+            assertEquals(rank, top.get(position).getRank());
+            assertEquals(rank, leaderboard.getRank(name));
+            assertEquals(name, leaderboard.getTop(position, 1).get(0).getName());
+        }
+    }
+
+    private static void assertTop(String expected, List<Leaderboard.Entry> entries) {
+        StringBuilder actual = new StringBuilder();
+        for (Leaderboard.Entry entry : entries) {
+            if (actual.length() > 0) {
+                actual.append(", ");
+            }
+            actual.append(entry.getName()).append(':').append(entry.getScore()).append(':').append(entry.getRank());
+        }
+        assertEquals(expected, actual.toString());
+    }
+}
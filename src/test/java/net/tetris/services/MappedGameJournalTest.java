@@ -0,0 +1,192 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+public class MappedGameJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedGameJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        journal = newJournal();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        journal.close();
+    }
+
+    @Test
+    public void shouldReplayEventsInOrder() throws IOException {
+        journal.playerRegistered(0, "vasya", "http://localhost:1234", "token", 42);
+        journal.figureTaken(0, Figure.Type.T);
+        journal.commandApplied(0, GameEvents.ROTATE, 3);
+        journal.tickFinished(1);
+        journal.stateRecorded(0, -7, 100);
+        journal.callbackUrlChanged(0, "http://localhost:4321");
+        journal.cleared();
+
+        assertEquals("registered 0 vasya http://localhost:1234 token 42\n" +
+                "figure 0 T\n" +
+                "command 0 2 3\n" +
+                "tick 1\n" +
+                "state 0 -7 100\n" +
+                "url 0 http://localhost:4321\n" +
+                "cleared\n", replay(journal));
+    }
+
+    @Test
+    public void shouldKeepLongAndMissingStrings() throws IOException {
+        String name = "a player with a name longer than one record, вася";
+        journal.playerRegistered(3, name, null, "", -1);
+
+        assertEquals("registered 3 " + name + " null  -1\n", replay(journal));
+    }
+
+    @Test
+    public void shouldReplayAfterReopen() throws IOException, InterruptedException {
+        journal.playerRegistered(0, "vasya", "http://localhost:1234", "token", 42);
+        journal.tickFinished(1);
+        journal.close();
+
+        journal = newJournal();
+        journal.tickFinished(2);
+
+        assertEquals("registered 0 vasya http://localhost:1234 token 42\ntick 1\ntick 2\n", replay(journal));
+    }
+
+    @Test
+    public void shouldRollToNextSegment() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            journal.tickFinished(i);
+        }
+
+        assertTrue(new File(folder.getRoot(), "journal-00000003.seg").exists());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            expected.append("tick ").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), replay(journal));
+    }
+
+    @Test
+    public void shouldReplayFromMarkWithoutStartingSegment() throws IOException {
+        journal.tickFinished(1);
+        long mark = journal.mark();
+        journal.tickFinished(2);
+
+        assertEquals("tick 2\n", replay(journal, mark));
+        assertFalse(new File(folder.getRoot(), "journal-00000001.seg").exists());
+    }
+
+    @Test
+    public void shouldDiscardWholeSegmentsBeforeMark() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            journal.tickFinished(i);
+        }
+        long mark = journal.mark();
+        journal.tickFinished(100);
+
+        journal.discardBefore(mark);
+
+        assertFalse(new File(folder.getRoot(), "journal-00000000.seg").exists());
+        assertTrue(new File(folder.getRoot(), "journal-00000001.seg").exists());
+        assertEquals("tick 100\n", replay(journal, mark));
+    }
+
+    @Test
+    public void shouldDropTornRecordOnOpen() throws IOException, InterruptedException {
+        journal.tickFinished(1);
+        journal.playerRegistered(0, "vasya", "http://localhost:1234", "token", 42);
+        journal.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), "journal-00000000.seg"), "rw")) {
+            file.seek(MappedGameJournal.RECORD_SIZE * 2);
+            file.write(0);
+        }
+
+        journal = newJournal();
+        journal.tickFinished(2);
+
+        assertEquals("tick 1\ntick 2\n", replay(journal));
+    }
+
+    @Test
+    public void shouldIgnoreEventsWhenDisabled() throws IOException, InterruptedException {
+        MappedGameJournal disabled = new MappedGameJournal();
+        disabled.open();
+        disabled.tickFinished(1);
+
+        assertEquals("", replay(disabled));
+        disabled.close();
+    }
+
+    private MappedGameJournal newJournal() throws IOException {
+        MappedGameJournal journal = new MappedGameJournal();
+        journal.setDirectory(folder.getRoot().getAbsolutePath());
+        journal.setSegmentSize(64 * MappedGameJournal.RECORD_SIZE);
+        journal.setFlushInterval(10);
+        journal.open();
+        return journal;
+    }
+
+    private static String replay(GameJournal journal) throws IOException {
+        return replay(journal, 0);
+    }
+
+    private static String replay(GameJournal journal, long mark) throws IOException {
+        final StringBuilder events = new StringBuilder();
+        journal.replay(new GameEvents() {
+            @Override
+            public void playerRegistered(int player, String name, String callbackUrl, String token, long seed) {
+                events.append("registered ").append(player).append(' ').append(name).append(' ')
+                        .append(callbackUrl).append(' ').append(token).append(' ').append(seed).append('\n');
+            }
+
+            @Override
+            public void callbackUrlChanged(int player, String callbackUrl) {
+                events.append("url ").append(player).append(' ').append(callbackUrl).append('\n');
+            }
+
+            @Override
+            public void figureTaken(int player, Figure.Type type) {
+                events.append("figure ").append(player).append(' ').append(type).append('\n');
+            }
+
+            @Override
+            public void commandApplied(int player, int command, int value) {
+                events.append("command ").append(player).append(' ').append(command).append(' ').append(value).append('\n');
+            }
+
+            @Override
+            public void tickFinished(long tick) {
+                events.append("tick ").append(tick).append('\n');
+            }
+
+            @Override
+            public void stateRecorded(int player, int glassHash, int score) {
+                events.append("state ").append(player).append(' ').append(glassHash).append(' ').append(score).append('\n');
+            }
+
+            @Override
+            public void cleared() {
+                events.append("cleared\n");
+            }
+        }, mark);
+        return events.toString();
+    }
+}
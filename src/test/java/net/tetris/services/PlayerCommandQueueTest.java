@@ -0,0 +1,62 @@
+package net.tetris.services;
+
+import net.tetris.dom.Joystick;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PlayerCommandQueueTest {
+    @Mock
+    private Joystick game;
+    private PlayerCommandQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = new PlayerCommandQueue();
+    }
+
+    @Test
+    public void shouldApplyCommandsInOrder() {
+        queue.rotate(2);
+        queue.moveLeft(1);
+        queue.moveRight(3);
+        queue.drop();
+
+        queue.applyTo(game);
+
+        InOrder inOrder = inOrder(game);
+        inOrder.verify(game).rotate(2);
+        inOrder.verify(game).moveLeft(1);
+        inOrder.verify(game).moveRight(3);
+        inOrder.verify(game).drop();
+    }
+
+    @Test
+    public void shouldBeEmptyWhenApplied() {
+        queue.drop();
+
+        queue.applyTo(game);
+        queue.applyTo(game);
+
+        verify(game, times(1)).drop();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldIgnoreCommandsOverLimit() {
+        for (int i = 0; i < PlayerCommandQueue.MAX_COMMANDS_PER_TICK + 10; i++) {
+            queue.moveLeft(1);
+        }
+
+        queue.applyTo(game);
+
+        verify(game, times(PlayerCommandQueue.MAX_COMMANDS_PER_TICK)).moveLeft(1);
+    }
+}
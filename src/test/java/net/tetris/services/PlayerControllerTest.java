@@ -13,14 +13,18 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static net.tetris.dom.TetrisGame.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * User: serhiy.zelenin
@@ -62,7 +66,7 @@ public class PlayerControllerTest {
 
     @Test
     public void shouldSendRequestControlCommands() throws IOException, InterruptedException {
-        controller.requestControl(vasya, Figure.Type.T, 4, 19, joystick, Collections.<Plot>emptyList());
+        controller.requestControl(vasya, Figure.Type.T, 4, 19, joystick, new int[GLASS_HEIGHT]);
         server.waitForRequest();
         assertEquals("T", server.getRequestParameter("figure"));
         assertEquals("4", server.getRequestParameter("x"));
@@ -72,7 +76,7 @@ public class PlayerControllerTest {
     @Test
     public void shouldSendRequestControlCommandsNoTailSlash() throws IOException, InterruptedException {
         try {
-            controller.requestControl(new Player("vasya", "http://localhost:1111", new PlayerScores()), Figure.Type.T, 1, 1, joystick, Collections.<Plot>emptyList());
+            controller.requestControl(new Player("vasya", "http://localhost:1111", new PlayerScores()), Figure.Type.T, 1, 1, joystick, new int[GLASS_HEIGHT]);
         } catch (NumberFormatException e) {
             fail();
         }
@@ -99,7 +103,7 @@ public class PlayerControllerTest {
 
     @Test
     public void shouldSendGlassState() throws IOException, InterruptedException {
-        controller.requestControl(vasya, Figure.Type.T, 4, 19, joystick, Arrays.asList(plot(0, 0)));
+        controller.requestControl(vasya, Figure.Type.T, 4, 19, joystick, rows(plot(0, 0)));
         server.waitForRequest();
 
         int times = 10 - 1;
@@ -114,7 +118,7 @@ public class PlayerControllerTest {
     @Test
     public void shouldSendGlassStateWhenSeveralDropped() throws IOException, InterruptedException {
         controller.requestControl(vasya, Figure.Type.T, 4, 19, joystick,
-                Arrays.asList(plot(5, 0), plot(6, 1)));
+                rows(plot(5, 0), plot(6, 1)));
         server.waitForRequest();
 
         assertEquals(spaces(5) + "*" + spaces(GLASS_WIDTH - 5 - 1) +
@@ -123,16 +127,86 @@ public class PlayerControllerTest {
                 server.getRequestParameter("glass"));
     }
 
+    @Test
+    public void shouldPushStateToOpenChannelInsteadOfCallback() throws IOException {
+        BotChannels channels = new BotChannels();
+        MockBotChannel channel = new MockBotChannel();
+        channels.register("vasya", channel);
+        controller.setBotChannels(channels);
+
+        controller.requestControl(vasya, Figure.Type.T, 4, 19, joystick, rows(plot(0, 0)));
+
+        assertEquals("figure=T&x=4&y=19&glass=*" + StringUtils.repeat("+", GLASS_WIDTH * GLASS_HEIGHT - 1), channel.state);
+    }
+
     private Plot plot(int x, int y) {
         return new Plot(x, y, PlotColor.CYAN);
     }
 
+    private int[] rows(Plot... plots) {
+        int[] rows = new int[GLASS_HEIGHT];
+        for (Plot plot : plots) {
+            rows[plot.getY()] |= 1 << GLASS_WIDTH - plot.getX();
+        }
+        return rows;
+    }
+
+    @Test
+    public void shouldCountErrorStatusAsFailureWithoutMovingJoystick() throws IOException, InterruptedException {
+        CallbackCircuitBreaker circuitBreaker = mock(CallbackCircuitBreaker.class);
+        when(circuitBreaker.allowRequest(vasya)).thenReturn(true);
+        controller.setCircuitBreaker(circuitBreaker);
+        server.setStatus(500);
+        server.setResponse("left=1,drop");
+
+        waitForPlayerResponse();
+
+        assertEquals("", joystick.toString());
+        verify(circuitBreaker).requestFailed(eq(vasya), anyString());
+        verify(circuitBreaker, never()).requestSucceeded(vasya);
+    }
+
+    @Test
+    public void shouldReportRoundTripOfCallback() throws IOException, InterruptedException {
+        final List<Long> roundTrips = new ArrayList<>();
+        controller.setRoundTripListener(new PlayerController.RoundTripListener() {
+            @Override
+            public void responded(Player player, long nanos) {
+                roundTrips.add(nanos);
+            }
+        });
+        server.setResponse("drop");
+
+        waitForPlayerResponse();
+
+        assertEquals(1, roundTrips.size());
+        assertTrue(roundTrips.get(0) > 0);
+    }
+
     private void waitForPlayerResponse() throws IOException, InterruptedException {
-        controller.requestControl(vasya, Figure.Type.I, 123, 123, joystick, Collections.<Plot>emptyList());
+        controller.requestControl(vasya, Figure.Type.I, 123, 123, joystick, new int[GLASS_HEIGHT]);
         server.waitForRequest();
         Thread.sleep(100);
     }
 
+    private static class MockBotChannel implements BotChannel {
+        private String state;
+
+        @Override
+        public void sendState(String state) {
+            this.state = state;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
     private static class MockJoystick implements Joystick {
         private List<String> calls = new ArrayList<>();
 
@@ -77,4 +77,24 @@ public class PlayerScoresTest {
 
         assertEquals(100 + 10, playerScores.getScore());
     }
+
+    @Test
+    public void shouldCountRemovedLines(){
+        playerScores.linesRemoved(1);
+        playerScores.linesRemoved(4);
+
+        playerScores.glassOverflown();
+
+        assertEquals(5, playerScores.getLines());
+    }
+
+    @Test
+    public void shouldKeepLeaderboardUpToDate(){
+        Leaderboard leaderboard = new Leaderboard();
+        playerScores.rankIn(leaderboard, "vasya");
+
+        playerScores.linesRemoved(2);
+
+        assertEquals(300, leaderboard.getEntry("vasya").getScore());
+    }
 }
@@ -3,7 +3,9 @@ package net.tetris.services;
 
 import net.tetris.dom.*;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
@@ -12,7 +14,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -24,17 +28,21 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ContextConfiguration(classes = {PlayerService.class,
         MockScreenSenderConfiguration.class, MockPlayerController.class})
 @RunWith(SpringJUnit4ClassRunner.class)
 public class PlayerServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private ArgumentCaptor<Map> screenSendCaptor;
     private ArgumentCaptor<Player> playerCaptor;
     private ArgumentCaptor<Integer> xCaptor;
     private ArgumentCaptor<Integer> yCaptor;
     private ArgumentCaptor<Figure.Type> figureCaptor;
-    private ArgumentCaptor<List> plotsCaptor;
+    private ArgumentCaptor<int[]> rowsCaptor;
 
     @Autowired
     private PlayerService playerService;
@@ -53,10 +61,11 @@ public class PlayerServiceTest {
         xCaptor = ArgumentCaptor.forClass(Integer.class);
         yCaptor = ArgumentCaptor.forClass(Integer.class);
         figureCaptor = ArgumentCaptor.forClass(Figure.Type.class);
-        plotsCaptor = ArgumentCaptor.forClass(List.class);
+        rowsCaptor = ArgumentCaptor.forClass(int[].class);
 
         playerService.clear();
         Mockito.reset(playerController, screenSender);
+        when(screenSender.getWatchedPlayers()).thenReturn(null);
     }
 
     @Test
@@ -91,11 +100,24 @@ public class PlayerServiceTest {
 
         assertSentToPlayers(vasya, petya);
         verify(playerController, times(2)).requestControl(playerCaptor.capture(), figureCaptor.capture(),
-                xCaptor.capture(), yCaptor.capture(), Matchers.<Joystick>any(), plotsCaptor.capture());
+                xCaptor.capture(), yCaptor.capture(), Matchers.<Joystick>any(), rowsCaptor.capture());
 
         assertHostsCaptured("http://vasya:1234", "http://petya:1234");
     }
 
+    @Test
+    public void shouldBuildScreensOfWatchedPlayersOnly() throws IOException {
+        Player vasya = playerService.addNewPlayer("vasya", "http://vasya:1234");
+        playerService.addNewPlayer("petya", "http://petya:1234");
+        when(screenSender.getWatchedPlayers()).thenReturn(Collections.singleton("vasya"));
+
+        playerService.nextStepForAllGames();
+
+        assertSentToPlayers(vasya);
+        verify(playerController, times(2)).requestControl(playerCaptor.capture(), figureCaptor.capture(),
+                xCaptor.capture(), yCaptor.capture(), Matchers.<Joystick>any(), rowsCaptor.capture());
+    }
+
     @Test
     public void shouldRequestControlFromAllPlayersWithGlassState() throws IOException {
         playerService.addNewPlayer("vasya", "http://vasya:1234");
@@ -104,10 +126,104 @@ public class PlayerServiceTest {
         playerService.nextStepForAllGames();
 
         verify(playerController).requestControl(playerCaptor.capture(), figureCaptor.capture(),
-                xCaptor.capture(), yCaptor.capture(), Matchers.<Joystick>any(), plotsCaptor.capture());
-        List<Plot> sentPlots = plotsCaptor.getValue();
-        assertEquals(1, sentPlots.size());
-        assertContainsPlot(0, 0, PlotColor.CYAN, sentPlots);
+                xCaptor.capture(), yCaptor.capture(), Matchers.<Joystick>any(), rowsCaptor.capture());
+        int[] sentRows = rowsCaptor.getValue();
+        assertEquals(1 << TetrisGame.GLASS_WIDTH, sentRows[0]);
+        for (int y = 1; y < sentRows.length; y++) {
+            assertEquals(0, sentRows[y]);
+        }
+    }
+
+    @Test
+    public void shouldRestoreGamesFromJournal() throws Exception {
+        MappedGameJournal journal = openJournal();
+        PlayerService service = new PlayerService(mock(ScreenSender.class), playerController, journal);
+        service.addNewPlayer("vasya", "http://vasya:1234");
+        service.addNewPlayer("petya", "http://petya:1234");
+        play(service, 50);
+        journal.close();
+
+        MappedGameJournal reopened = openJournal();
+        PlayerService restored = new PlayerService(mock(ScreenSender.class), playerController, reopened);
+        restored.restore();
+        reopened.close();
+
+        assertTrue(!service.getGlasses().get(0).getDroppedPlots().isEmpty());
+        assertRestored(service, restored);
+    }
+
+    @Test
+    public void shouldRestoreGamesFromSnapshotAndJournalAfterIt() throws Exception {
+        MappedGameJournal journal = openJournal();
+        WorldSnapshots snapshots = openSnapshots();
+        PlayerService service = new PlayerService(mock(ScreenSender.class), playerController, journal, snapshots);
+        service.addNewPlayer("vasya", "http://vasya:1234");
+        play(service, 25);
+        service.addNewPlayer("petya", "http://petya:1234");
+        play(service, 30);
+        snapshots.destroy();
+        journal.close();
+        assertTrue(new File(folder.getRoot(), "snapshot-0000000000000050.bin").exists());
+
+        MappedGameJournal reopened = openJournal();
+        WorldSnapshots reopenedSnapshots = openSnapshots();
+        PlayerService restored = new PlayerService(mock(ScreenSender.class), playerController, reopened, reopenedSnapshots);
+        restored.restore();
+        play(service, 20);
+        play(restored, 20);
+        reopenedSnapshots.destroy();
+        reopened.close();
+
+        assertRestored(service, restored);
+    }
+
+    private void assertRestored(PlayerService service, PlayerService restored) {
+        assertEquals(service.getTick(), restored.getTick());
+        assertEquals(service.getPlayers().size(), restored.getPlayers().size());
+        for (int i = 0; i < service.getPlayers().size(); i++) {
+            Player player = service.getPlayers().get(i);
+            Player restoredPlayer = restored.getPlayers().get(i);
+            assertEquals(player.getName(), restoredPlayer.getName());
+            assertEquals(player.getToken(), restoredPlayer.getToken());
+            assertEquals(player.getScore(), restoredPlayer.getScore());
+            assertEquals(service.getGlasses().get(i).getDroppedPlots().toString(),
+                    restored.getGlasses().get(i).getDroppedPlots().toString());
+            assertEquals(service.getGlasses().get(i).getCurrentFigurePlots().toString(),
+                    restored.getGlasses().get(i).getCurrentFigurePlots().toString());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void play(PlayerService service, int ticks) throws IOException {
+        for (int i = 0; i < ticks; i++) {
+            service.nextStepForAllGames();
+            ArgumentCaptor<Joystick> joystickCaptor = ArgumentCaptor.forClass(Joystick.class);
+            verify(playerController, Mockito.atLeast(0)).requestControl(any(Player.class), any(Figure.Type.class),
+                    Matchers.anyInt(), Matchers.anyInt(), joystickCaptor.capture(), any(int[].class));
+            for (Joystick joystick : joystickCaptor.getAllValues()) {
+                joystick.moveLeft(i % 5);
+                joystick.rotate(i % 3);
+                if (i % 2 == 0) {
+                    joystick.drop();
+                }
+            }
+            Mockito.reset(playerController);
+        }
+    }
+
+    private WorldSnapshots openSnapshots() throws IOException {
+        WorldSnapshots snapshots = new WorldSnapshots();
+        snapshots.setDirectory(folder.getRoot().getAbsolutePath());
+        snapshots.setInterval(25);
+        snapshots.init();
+        return snapshots;
+    }
+
+    private MappedGameJournal openJournal() throws IOException {
+        MappedGameJournal journal = new MappedGameJournal();
+        journal.setDirectory(folder.getRoot().getAbsolutePath());
+        journal.open();
+        return journal;
     }
 
     private List<Plot> getPlotsFor(Player vasya) {
@@ -1,17 +1,21 @@
 package net.tetris.services;
 
 import com.jayway.restassured.path.json.JsonPath;
+import net.tetris.dom.Figure;
 import net.tetris.web.controller.UpdateRequest;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletResponse;
 
 import javax.servlet.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
 
 import static com.jayway.restassured.path.json.JsonPath.from;
 import static junit.framework.Assert.*;
@@ -29,7 +33,8 @@ public class RestScreenSenderTest {
     private ScreenSender sender;
     private MockHttpServletResponse response;
     private RestScreenSenderTest.MockAsyncContext asyncContext;
-    private ScheduledExecutorService restSenderExecutorService = new ScheduledThreadPoolExecutor(10);
+    private ExecutorService restSenderExecutorService = new ThreadPoolExecutor(10, 1000, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>());
 
     @Before
     public void setUp() throws Exception {
@@ -115,6 +120,16 @@ public class RestScreenSenderTest {
         assertTrue(asyncContext.isComplete());
     }
 
+    @Test
+    public void shouldCompleteAllPlayersRequestWhenThereAreNoPlayers() throws UnsupportedEncodingException {
+        sender.scheduleUpdate(new UpdateRequest(asyncContext, true, null));
+
+        sender.sendUpdates(new HashMap<Player, PlayerData>());
+
+        assertTrue(asyncContext.isComplete());
+        assertEquals("", response.getContentAsString());
+    }
+
     @Test
     public void shouldSendUpdateForSeveralRequestedPlayers() throws UnsupportedEncodingException {
         sender.scheduleUpdate(updateRequestFor("vasya", "petya"));
@@ -149,6 +164,572 @@ public class RestScreenSenderTest {
         assertEquals(345, jsonPath.getInt("vasya.score"));
     }
 
+    @Test
+    public void shouldSendSequenceAndFullFrameWhenClientHasNoFrames() throws UnsupportedEncodingException {
+        sender.scheduleUpdate(sequencedRequestFor(asyncContext, 0, "vasya"));
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+
+        JsonPath jsonPath = from(response.getContentAsString());
+        assertTrue(jsonPath.getLong("seq") > 0);
+        assertEquals(1, jsonPath.getInt("players.vasya.plots.blue[0][0]"));
+        assertEquals(2, jsonPath.getInt("players.vasya.plots.blue[0][1]"));
+    }
+
+    @Test
+    public void shouldSendOnlyChangedCellsSinceLastAppliedFrame() throws UnsupportedEncodingException {
+        sender.scheduleUpdate(sequencedRequestFor(asyncContext, 0, "vasya"));
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE), plot(5, 0, PlotColor.CYAN)).asMap());
+        long sequence = from(response.getContentAsString()).getLong("seq");
+
+        MockHttpServletResponse nextResponse = new MockHttpServletResponse();
+        sender.scheduleUpdate(sequencedRequestFor(new MockAsyncContext(nextResponse), sequence, "vasya"));
+        sender.sendUpdates(screenFor("vasya", 456, plot(1, 1, PlotColor.BLUE), plot(5, 0, PlotColor.CYAN)).asMap());
+
+        JsonPath jsonPath = from(nextResponse.getContentAsString());
+        assertEquals(sequence + 1, jsonPath.getLong("seq"));
+        assertNull(jsonPath.get("players.vasya.plots"));
+        assertEquals(1, jsonPath.getList("players.vasya.set").size());
+        assertEquals(1, jsonPath.getInt("players.vasya.set[0].blue[1]"));
+        assertEquals(1, jsonPath.getList("players.vasya.clear").size());
+        assertEquals(2, jsonPath.getInt("players.vasya.clear[0][1]"));
+        assertEquals(456, jsonPath.getInt("players.vasya.score"));
+    }
+
+    @Test
+    public void shouldSendFullFrameWhenLastAppliedFrameIsTooOld() throws UnsupportedEncodingException {
+        for (int i = 0; i < ScreenHistory.DEPTH + 1; i++) {
+            sender.scheduleUpdate(sequencedRequestFor(new MockAsyncContext(new MockHttpServletResponse()), 0, "vasya"));
+            sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        }
+
+        sender.scheduleUpdate(sequencedRequestFor(asyncContext, 1, "vasya"));
+        sender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+
+        assertEquals(1, from(response.getContentAsString()).getInt("players.vasya.plots.blue[0][1]"));
+    }
+
+    @Test
+    public void shouldStreamFrameEveryTick() throws UnsupportedEncodingException {
+        sender.subscribe(sequencedRequestFor(asyncContext, 0, "vasya"));
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        sender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+
+        String[] events = response.getContentAsString().split("\n\n");
+        assertEquals(2, events.length);
+        assertTrue(events[0].startsWith("id: 1\ndata: "));
+        assertEquals(2, from(events[0].substring(events[0].indexOf('{'))).getInt("players.vasya.plots.blue[0][1]"));
+        assertTrue(events[1].startsWith("id: 2\ndata: "));
+        assertEquals(1, from(events[1].substring(events[1].indexOf('{'))).getInt("players.vasya.set[0].blue[1]"));
+        assertFalse(asyncContext.isComplete());
+    }
+
+    @Test
+    public void shouldGzipStreamWithEveryEventDecodableOnArrival() throws IOException {
+        UpdateRequest stream = sequencedRequestFor(asyncContext, 0, "vasya");
+        stream.setGzipAccepted(true);
+        sender.subscribe(stream);
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        String[] events = gunzipFlushed(response.getContentAsByteArray()).split("\n\n");
+        assertEquals(1, events.length);
+        assertTrue(events[0].startsWith("id: 1\ndata: "));
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+
+        events = gunzipFlushed(response.getContentAsByteArray()).split("\n\n");
+        assertEquals(2, events.length);
+        assertEquals(1, from(events[1].substring(events[1].indexOf('{'))).getInt("players.vasya.set[0].blue[1]"));
+    }
+
+    @Test
+    public void shouldStopStreamingWhenWriteFailed() throws UnsupportedEncodingException {
+        sender.subscribe(sequencedRequestFor(asyncContext, 0, "vasya"));
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        response.setOutputStreamAccessAllowed(false);
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+        response.setOutputStreamAccessAllowed(true);
+        sender.sendUpdates(screenFor("vasya", plot(1, 0, PlotColor.BLUE)).asMap());
+
+        assertTrue(asyncContext.isComplete());
+        assertEquals(1, response.getContentAsString().split("\n\n").length);
+    }
+
+    @Test
+    public void shouldSendCompactFrameWithRowBitmasksAndColorRuns() throws UnsupportedEncodingException {
+        UpdateRequest request = updateRequestFor("vasya");
+        request.setFormat(ScreenFormat.COMPACT);
+        sender.scheduleUpdate(request);
+        List<Plot> dropped = Arrays.asList(plot(0, 0, PlotColor.BLUE), plot(1, 0, PlotColor.BLUE),
+                plot(9, 0, PlotColor.RED), plot(2, 1, PlotColor.RED));
+        Map<Player, PlayerData> screens = new HashMap<>();
+        screens.put(new Player("vasya", "", new PlayerScores()),
+                new PlayerData(dropped, 77, dropped, Figure.Type.T, 1, 4, 18));
+
+        sender.sendUpdates(screens);
+
+        JsonPath jsonPath = from(response.getContentAsString());
+        assertEquals(1, jsonPath.getInt("v"));
+        assertTrue(jsonPath.getLong("seq") > 0);
+        assertEquals(Arrays.asList(515, 4), jsonPath.getList("players.vasya.g"));
+        assertEquals(Arrays.asList(Arrays.asList(0, 2), Arrays.asList(5, 2)), jsonPath.getList("players.vasya.c"));
+        assertEquals(Arrays.<Object>asList("T", 1, 4, 18), jsonPath.getList("players.vasya.f"));
+        assertEquals(77, jsonPath.getInt("players.vasya.s"));
+    }
+
+    @Test
+    public void shouldOmitFigureInCompactFrameWhenThereIsNone() throws UnsupportedEncodingException {
+        UpdateRequest request = updateRequestFor("vasya");
+        request.setFormat(ScreenFormat.COMPACT);
+        request.setLastSequence(1);
+        sender.scheduleUpdate(request);
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+
+        JsonPath jsonPath = from(response.getContentAsString());
+        assertTrue(jsonPath.getList("players.vasya.g").isEmpty());
+        assertNull(jsonPath.get("players.vasya.f"));
+        assertEquals(123, jsonPath.getInt("players.vasya.s"));
+    }
+
+    @Test
+    public void shouldSendSameGzippedBodyToClientsAcceptingGzip() throws IOException {
+        MockHttpServletResponse otherResponse = new MockHttpServletResponse();
+        sender.scheduleUpdate(gzipRequestFor(asyncContext, "vasya"));
+        sender.scheduleUpdate(gzipRequestFor(new MockAsyncContext(otherResponse), "vasya"));
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertTrue(Arrays.equals(response.getContentAsByteArray(), otherResponse.getContentAsByteArray()));
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        assertContainsPlayerCoordinates(gunzip(response.getContentAsByteArray()), "vasya", "blue", 1, 2);
+    }
+
+    @Test
+    public void shouldNotGzipWhenClientDoesNotAcceptIt() throws UnsupportedEncodingException {
+        sender.scheduleUpdate(updateRequestFor("vasya"));
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertContainsPlayerCoordinates(response.getContentAsString(), "vasya", "blue", 1, 2);
+    }
+
+    @Test
+    public void shouldSkipFramesForStreamStillWritingPreviousOne() throws Exception {
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService);
+        restSender.setSendBudget(100);
+        BlockingResponse slowResponse = new BlockingResponse();
+        restSender.subscribe(sequencedRequestFor(new MockAsyncContext(slowResponse), 0, "vasya"));
+        restSender.subscribe(sequencedRequestFor(asyncContext, 0, "vasya"));
+
+        long start = System.currentTimeMillis();
+        restSender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        restSender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(2, response.getContentAsString().split("\n\n").length);
+
+        slowResponse.release();
+        Thread.sleep(100);
+        restSender.sendUpdates(screenFor("vasya", plot(1, 0, PlotColor.BLUE)).asMap());
+
+        String slowContent = slowResponse.getContentAsString();
+        assertTrue(slowContent.contains("id: 1\n"));
+        assertFalse(slowContent.contains("id: 2\n"));
+        assertTrue(slowContent.contains("id: 3\n"));
+    }
+
+    @Test
+    public void shouldDropStreamBlockedLongerThanWriteTimeout() throws Exception {
+        final long[] time = {0};
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService) {
+            @Override
+            long now() {
+                return time[0];
+            }
+        };
+        restSender.setSendBudget(100);
+        restSender.setWriteTimeout(5000);
+        BlockingResponse slowResponse = new BlockingResponse();
+        MockAsyncContext slowContext = new MockAsyncContext(slowResponse);
+        restSender.subscribe(sequencedRequestFor(slowContext, 0, "vasya"));
+
+        restSender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        time[0] = 1000;
+        restSender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+        assertFalse(slowContext.isComplete());
+
+        time[0] = 6000;
+        restSender.sendUpdates(screenFor("vasya", plot(1, 0, PlotColor.BLUE)).asMap());
+        assertEquals(Collections.<String>emptySet(), restSender.getWatchedPlayers());
+        assertFalse(slowContext.isComplete());
+
+        slowResponse.release();
+        Thread.sleep(100);
+        assertTrue(slowContext.isComplete());
+    }
+
+    @Test
+    public void shouldKeepRequestPendingWhileWritesInFlightAreOverBound() throws Exception {
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService);
+        restSender.setSendBudget(100);
+        restSender.setMaxWritesInFlight(1);
+        BlockingResponse slowResponse = new BlockingResponse();
+        MockAsyncContext slowContext = new MockAsyncContext(slowResponse);
+        restSender.scheduleUpdate(new UpdateRequest(slowContext, "vasya"));
+        restSender.scheduleUpdate(updateRequestFor("vasya"));
+
+        long start = System.currentTimeMillis();
+        restSender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertFalse(asyncContext.isComplete());
+        assertEquals(1, restSender.getPendingCount());
+
+        slowResponse.release();
+        Thread.sleep(100);
+        assertTrue(slowContext.isComplete());
+        restSender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(response.getContentAsString(), "vasya", "blue", 1, 1);
+    }
+
+    @Test
+    public void shouldAbandonLongPollResponseBlockedLongerThanWriteTimeout() throws Exception {
+        final long[] time = {0};
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService) {
+            @Override
+            long now() {
+                return time[0];
+            }
+        };
+        restSender.setSendBudget(100);
+        restSender.setWriteTimeout(5000);
+        restSender.setMaxWritesInFlight(1);
+        BlockingResponse slowResponse = new BlockingResponse();
+        MockAsyncContext slowContext = new MockAsyncContext(slowResponse);
+        restSender.scheduleUpdate(new UpdateRequest(slowContext, "vasya"));
+
+        restSender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        time[0] = 1000;
+        restSender.reapExpiredRequests();
+        assertFalse(slowContext.isComplete());
+
+        time[0] = 6000;
+        restSender.reapExpiredRequests();
+        assertFalse(slowContext.isComplete());
+        restSender.scheduleUpdate(updateRequestFor("vasya"));
+        restSender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(response.getContentAsString(), "vasya", "blue", 1, 1);
+
+        slowResponse.release();
+        Thread.sleep(100);
+        assertTrue(slowContext.isComplete());
+    }
+
+    @Test
+    public void shouldSendFrameToHealthyClientWhilePoolSizeClientsAreBlocked() throws Exception {
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService);
+        restSender.setSendBudget(100);
+        List<BlockingResponse> slowResponses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            BlockingResponse slowResponse = new BlockingResponse();
+            slowResponses.add(slowResponse);
+            restSender.scheduleUpdate(new UpdateRequest(new MockAsyncContext(slowResponse), "vasya"));
+        }
+        restSender.scheduleUpdate(updateRequestFor("vasya"));
+
+        long start = System.currentTimeMillis();
+        restSender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertTrue(asyncContext.isComplete());
+        assertContainsPlayerCoordinates(response.getContentAsString(), "vasya", "blue", 1, 2);
+
+        for (BlockingResponse slowResponse : slowResponses) {
+            slowResponse.release();
+        }
+    }
+
+    @Test
+    public void shouldReportPlayersWatchedByRequestsAndStreams() {
+        sender.scheduleUpdate(updateRequestFor("vasya"));
+        sender.subscribe(sequencedRequestFor(asyncContext, 0, "petya"));
+
+        assertEquals(new HashSet<>(Arrays.asList("vasya", "petya")), sender.getWatchedPlayers());
+
+        sender.scheduleUpdate(new UpdateRequest(asyncContext, true, null));
+        assertNull(sender.getWatchedPlayers());
+    }
+
+    @Test
+    public void shouldKeepRequestScheduledAfterWatchedPlayersWereReported() throws UnsupportedEncodingException {
+        sender.getWatchedPlayers();
+        sender.scheduleUpdate(updateRequestFor("vasya"));
+
+        sender.sendUpdates(new HashMap<Player, PlayerData>());
+        assertFalse(asyncContext.isComplete());
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(response.getContentAsString(), "vasya", "blue", 1, 2);
+    }
+
+    @Test
+    public void shouldKeepAllPlayersRequestScheduledAfterWatchedPlayersWereReported() throws UnsupportedEncodingException {
+        MockHttpServletResponse watchedResponse = new MockHttpServletResponse();
+        sender.scheduleUpdate(new UpdateRequest(new MockAsyncContext(watchedResponse), "vasya"));
+        assertEquals(Collections.singleton("vasya"), sender.getWatchedPlayers());
+        sender.scheduleUpdate(new UpdateRequest(asyncContext, true, null));
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(watchedResponse.getContentAsString(), "vasya", "blue", 1, 2);
+        assertFalse(asyncContext.isComplete());
+
+        assertNull(sender.getWatchedPlayers());
+        sender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE))
+                .addScreenFor("petya", 0, plot(2, 2, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(response.getContentAsString(), "petya", "blue", 2, 2);
+    }
+
+    @Test
+    public void shouldSendThumbnailWithColumnHeightsAndScore() throws UnsupportedEncodingException {
+        UpdateRequest request = new UpdateRequest(asyncContext, true, null);
+        request.setFormat(ScreenFormat.THUMBNAIL);
+        sender.scheduleUpdate(request);
+        List<Plot> dropped = Arrays.asList(plot(0, 0, PlotColor.CYAN), plot(0, 1, PlotColor.CYAN),
+                plot(3, 0, PlotColor.CYAN));
+        Map<Player, PlayerData> screens = new HashMap<>();
+        screens.put(new Player("vasya", "", new PlayerScores()), new PlayerData(dropped, 77, dropped, Figure.Type.T, 0, 4, 18));
+
+        sender.sendUpdates(screens);
+
+        JsonPath jsonPath = from(response.getContentAsString());
+        assertEquals(1, jsonPath.getInt("v"));
+        assertEquals(Arrays.asList(2, 0, 0, 1, 0, 0, 0, 0, 0, 0), jsonPath.getList("players.vasya.h"));
+        assertEquals(77, jsonPath.getInt("players.vasya.s"));
+        assertNull(jsonPath.get("players.vasya.g"));
+    }
+
+    @Test
+    public void shouldStreamEveryNthFrameOnly() throws UnsupportedEncodingException {
+        UpdateRequest stream = sequencedRequestFor(asyncContext, 0, "vasya");
+        stream.setEvery(2);
+        sender.subscribe(stream);
+
+        for (int i = 0; i < 4; i++) {
+            sender.sendUpdates(screenFor("vasya", plot(1, i, PlotColor.BLUE)).asMap());
+        }
+
+        String[] events = response.getContentAsString().split("\n\n");
+        assertEquals(2, events.length);
+        assertTrue(events[0].startsWith("id: 2\n"));
+        assertTrue(events[1].startsWith("id: 4\n"));
+    }
+
+    @Test
+    public void shouldPostponeRequestUntilItsTick() throws UnsupportedEncodingException {
+        UpdateRequest request = updateRequestFor("vasya");
+        request.setEvery(3);
+        sender.scheduleUpdate(request);
+
+        assertTrue(sender.getWatchedPlayers().isEmpty());
+        sender.sendUpdates(screenFor("vasya", plot(1, 1, PlotColor.BLUE)).asMap());
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        assertFalse(asyncContext.isComplete());
+
+        assertEquals(Collections.singleton("vasya"), sender.getWatchedPlayers());
+        sender.sendUpdates(screenFor("vasya", plot(1, 3, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(response.getContentAsString(), "vasya", "blue", 1, 3);
+    }
+
+    @Test
+    public void shouldRejectRequestsOverPendingLimit() {
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService);
+        restSender.setMaxPendingRequests(1);
+        MockHttpServletResponse rejectedResponse = new MockHttpServletResponse();
+        MockAsyncContext rejectedContext = new MockAsyncContext(rejectedResponse);
+
+        restSender.scheduleUpdate(updateRequestFor("vasya"));
+        restSender.scheduleUpdate(new UpdateRequest(rejectedContext, "vasya"));
+
+        assertEquals(1, restSender.getPendingCount());
+        assertTrue(rejectedContext.isComplete());
+        assertEquals(503, rejectedResponse.getStatus());
+    }
+
+    @Test
+    public void shouldRejectStreamsOverLimit() {
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService);
+        restSender.setMaxStreams(1);
+        MockHttpServletResponse rejectedResponse = new MockHttpServletResponse();
+        MockAsyncContext rejectedContext = new MockAsyncContext(rejectedResponse);
+
+        restSender.subscribe(sequencedRequestFor(asyncContext, 0, "vasya"));
+        restSender.subscribe(sequencedRequestFor(rejectedContext, 0, "petya"));
+
+        assertFalse(asyncContext.isComplete());
+        assertTrue(rejectedContext.isComplete());
+        assertEquals(503, rejectedResponse.getStatus());
+        assertEquals(Collections.singleton("vasya"), restSender.getWatchedPlayers());
+    }
+
+    @Test
+    public void shouldSendHeartbeatToIdleStreamWhileGameIsPaused() throws Exception {
+        final long[] time = {0};
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService) {
+            @Override
+            long now() {
+                return time[0];
+            }
+        };
+        restSender.setHeartbeatInterval(5000);
+        restSender.subscribe(sequencedRequestFor(asyncContext, 0, "vasya"));
+
+        time[0] = 1000;
+        restSender.reapExpiredRequests();
+        Thread.sleep(100);
+        assertEquals("", response.getContentAsString());
+
+        time[0] = 5000;
+        restSender.reapExpiredRequests();
+        Thread.sleep(100);
+        assertEquals(":\n\n", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldDropStreamBlockedInHeartbeatWhileGameIsPaused() throws Exception {
+        final long[] time = {0};
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService) {
+            @Override
+            long now() {
+                return time[0];
+            }
+        };
+        restSender.setHeartbeatInterval(5000);
+        restSender.setWriteTimeout(5000);
+        BlockingResponse slowResponse = new BlockingResponse();
+        MockAsyncContext slowContext = new MockAsyncContext(slowResponse);
+        restSender.subscribe(sequencedRequestFor(slowContext, 0, "vasya"));
+
+        time[0] = 5000;
+        restSender.reapExpiredRequests();
+        time[0] = 10000;
+        restSender.reapExpiredRequests();
+        assertEquals(Collections.singleton("vasya"), restSender.getWatchedPlayers());
+
+        time[0] = 11000;
+        restSender.reapExpiredRequests();
+        assertEquals(Collections.<String>emptySet(), restSender.getWatchedPlayers());
+        assertFalse(slowContext.isComplete());
+
+        slowResponse.release();
+        Thread.sleep(100);
+        assertTrue(slowContext.isComplete());
+    }
+
+    @Test
+    public void shouldCloseStreamOpenLongerThanStreamTimeout() {
+        final long[] time = {0};
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService) {
+            @Override
+            long now() {
+                return time[0];
+            }
+        };
+        restSender.setStreamTimeout(60000);
+        restSender.subscribe(sequencedRequestFor(asyncContext, 0, "vasya"));
+
+        time[0] = 60001;
+        restSender.reapExpiredRequests();
+
+        assertTrue(asyncContext.isComplete());
+        assertEquals(Collections.<String>emptySet(), restSender.getWatchedPlayers());
+    }
+
+    @Test
+    public void shouldSupersedePendingRequestOfSameClient() throws UnsupportedEncodingException {
+        MockHttpServletResponse newerResponse = new MockHttpServletResponse();
+        UpdateRequest older = updateRequestFor("vasya");
+        older.setClientId("page1");
+        UpdateRequest newer = new UpdateRequest(new MockAsyncContext(newerResponse), "vasya");
+        newer.setClientId("page1");
+
+        sender.scheduleUpdate(older);
+        sender.scheduleUpdate(newer);
+        assertEquals(1, sender.getPendingCount());
+        assertTrue(asyncContext.isComplete());
+        assertEquals(204, response.getStatus());
+
+        sender.sendUpdates(screenFor("vasya", plot(1, 2, PlotColor.BLUE)).asMap());
+        assertContainsPlayerCoordinates(newerResponse.getContentAsString(), "vasya", "blue", 1, 2);
+        assertEquals("", response.getContentAsString());
+        assertEquals(0, sender.getPendingCount());
+    }
+
+    @Test
+    public void shouldReapRequestsPendingLongerThanTimeout() {
+        final long[] time = {0};
+        RestScreenSender restSender = new RestScreenSender(restSenderExecutorService) {
+            @Override
+            long now() {
+                return time[0];
+            }
+        };
+        restSender.setPendingTimeout(30000);
+        restSender.scheduleUpdate(updateRequestFor("vasya"));
+
+        time[0] = 20000;
+        restSender.reapExpiredRequests();
+        assertFalse(asyncContext.isComplete());
+
+        time[0] = 30000;
+        restSender.reapExpiredRequests();
+        assertTrue(asyncContext.isComplete());
+        assertEquals(204, response.getStatus());
+        assertEquals(0, restSender.getPendingCount());
+    }
+
+    private UpdateRequest gzipRequestFor(AsyncContext context, String... playerName) {
+        UpdateRequest request = new UpdateRequest(context, playerName);
+        request.setGzipAccepted(true);
+        return request;
+    }
+
+    private String gunzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Decodes a gzip stream which is flushed but not finished yet
+     */
+    private String gunzipFlushed(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        } catch (EOFException e) {
+            // no trailer until the stream ends
+        }
+        return out.toString("UTF-8");
+    }
+
+    private UpdateRequest sequencedRequestFor(AsyncContext context, long lastSequence, String... playerName) {
+        UpdateRequest request = new UpdateRequest(context, false, new HashSet<>(Arrays.asList(playerName)));
+        request.setLastSequence(lastSequence);
+        return request;
+    }
+
     private Plot plot(int x, int y, PlotColor color) {
         return new Plot(x, y, color);
     }
@@ -242,6 +823,30 @@ public class RestScreenSenderTest {
         }
     }
 
+    private static class BlockingResponse extends MockHttpServletResponse {
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            final ServletOutputStream out = super.getOutputStream();
+            return new ServletOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    out.write(b);
+                }
+            };
+        }
+
+        void release() {
+            latch.countDown();
+        }
+    }
+
     private class Screen {
         private Map<Player, PlayerData> map;
 
@@ -0,0 +1,161 @@
+package net.tetris.services;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class ScoreHistoryTest {
+    private ScoreHistory history;
+
+    @Before
+    public void setUp() {
+        history = new ScoreHistory();
+    }
+
+    @Test
+    public void shouldReturnTicksForShortRecentRange() {
+        recordTicks("vasya", 1, 100);
+
+        ScoreHistory.Range range = history.query("vasya", 91, 95, 100);
+
+        assertEquals(1, range.getStep());
+        assertEquals(5, range.size());
+        assertEquals(91, range.getTick(0));
+        assertEquals(910, range.getScore(0));
+        assertEquals(95, range.getLines(4));
+    }
+
+    @Test
+    public void shouldRollUpIntoMinutesForLongRange() {
+        recordTicks("vasya", 1, 1000);
+
+        ScoreHistory.Range range = history.query("vasya", 0, 1000, 100);
+
+        assertEquals(60, range.getStep());
+        assertEquals(17, range.size());
+        assertEquals(0, range.getTick(0));
+        assertEquals(590, range.getScore(0));
+        assertEquals(16 * 60, range.getTick(16));
+        assertEquals(10000, range.getScore(16));
+    }
+
+    @Test
+    public void shouldUseMinutesWhenTicksAreEvicted() {
+        recordTicks("vasya", 1, 1000);
+
+        ScoreHistory.Range range = history.query("vasya", 120, 180, 1000);
+
+        assertEquals(60, range.getStep());
+        assertEquals(2, range.size());
+        assertEquals(120, range.getTick(0));
+        assertEquals(1790, range.getScore(0));
+    }
+
+    @Test
+    public void shouldKeepLastValuesOverSkippedTicks() {
+        history.record(10, "vasya", 100, 1);
+        history.record(15, "vasya", 200, 2);
+
+        ScoreHistory.Range range = history.query("vasya", 10, 15, 100);
+
+        assertEquals(6, range.size());
+        assertEquals(100, range.getScore(4));
+        assertEquals(200, range.getScore(5));
+    }
+
+    @Test
+    public void shouldUseTicksWhenHistoryIsShort() {
+        recordTicks("vasya", 1001, 1050);
+
+        ScoreHistory.Range range = history.query("vasya", 0, Long.MAX_VALUE, 100);
+
+        assertEquals(1, range.getStep());
+        assertEquals(50, range.size());
+        assertEquals(1001, range.getTick(0));
+    }
+
+    @Test
+    public void shouldKeepFixedNumberOfPlayers() {
+        history.setMaxPlayers(1);
+        history.record(1, "vasya", 10, 0);
+        history.record(1, "petya", 10, 0);
+
+        assertNull(history.query("petya", 0, 10, 10));
+    }
+
+    @Test
+    public void shouldKeepHistoryOfRecordedPlayersWhenThereAreMorePlayers() {
+        history.setMaxPlayers(2);
+        for (int tick = 1; tick <= 100; tick++) {
+            history.record(tick, "vasya", tick, 0);
+            history.record(tick, "petya", tick, 0);
+            history.record(tick, "kolya", tick, 0);
+        }
+
+        assertEquals(100, history.query("vasya", 0, 100, 200).size());
+        assertEquals(100, history.query("petya", 0, 100, 200).size());
+        assertNull(history.query("kolya", 0, 100, 200));
+    }
+
+    @Test
+    public void shouldForgetPlayersNotRetained() {
+        history.record(1, "vasya", 10, 0);
+        history.record(1, "petya", 10, 0);
+
+        history.retain(Collections.singleton("petya"));
+
+        assertNull(history.query("vasya", 0, 10, 10));
+        assertEquals(1, history.query("petya", 0, 10, 10).size());
+    }
+
+    @Test
+    public void shouldForgetAllPlayersOnClear() {
+        history.record(1, "vasya", 10, 0);
+
+        history.clear();
+
+        assertNull(history.query("vasya", 0, 10, 10));
+    }
+
+    @Test
+    public void shouldRestoreSavedHistory() throws IOException {
+        recordTicks("vasya", 1, 5000);
+        history.record(5000, "petya", -500, 0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        history.save(new DataOutputStream(bytes));
+
+        ScoreHistory restored = new ScoreHistory();
+        restored.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertTrue(bytes.size() < 5000);
+        assertRangesEqual(history.query("vasya", 4900, 5000, 200), restored.query("vasya", 4900, 5000, 200));
+        assertRangesEqual(history.query("vasya", 0, 5000, 200), restored.query("vasya", 0, 5000, 200));
+        assertRangesEqual(history.query("petya", 0, 5000, 200), restored.query("petya", 0, 5000, 200));
+    }
+
+    private void recordTicks(String player, int from, int to) {
+        for (int tick = from; tick <= to; tick++) {
+            history.record(tick, player, tick * 10, tick);
+        }
+    }
+
+    private static void assertRangesEqual(ScoreHistory.Range expected, ScoreHistory.Range actual) {
+        assertEquals(expected.getStep(), actual.getStep());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getTick(i), actual.getTick(i));
+            assertEquals(expected.getScore(i), actual.getScore(i));
+            assertEquals(expected.getLines(i), actual.getLines(i));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package net.tetris.services;
+
+import net.tetris.AllocationBudget;
+import net.tetris.dom.Figure;
+import net.tetris.dom.Joystick;
+import net.tetris.web.controller.UpdateRequest;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+public class TickAllocationTest {
+    @Test
+    public void shouldTickWithinBudget() throws IOException {
+        AllocationBudget budget = new AllocationBudget();
+        final PlayerService playerService = new PlayerService(new IdleScreenSender(), new IdlePlayerController(),
+                new DisabledGameJournal());
+        for (int i = 0; i < 100; i++) {
+            playerService.addNewPlayer("player" + i, "http://player" + i + ":8888");
+        }
+
+        budget.assertWithin("tetris.service.nextStepForAllGames", 2000, 2000, new Runnable() {
+            @Override
+            public void run() {
+                playerService.nextStepForAllGames();
+            }
+        });
+    }
+
+    private static class IdleScreenSender implements ScreenSender {
+        @Override
+        public void scheduleUpdate(UpdateRequest updateRequest) {
+        }
+
+        @Override
+        public void subscribe(UpdateRequest stream) {
+        }
+
+        @Override
+        public Set<String> getWatchedPlayers() {
+            return null;
+        }
+
+        @Override
+        public void sendUpdates(Map<Player, PlayerData> playerScreens) {
+        }
+
+        @Override
+        public int getPendingCount() {
+            return 0;
+        }
+
+        @Override
+        public void reapExpiredRequests() {
+        }
+    }
+
+    private static class IdlePlayerController extends PlayerController {
+        @Override
+        public void requestControl(Player player, Figure.Type type, int x, int y, Joystick joystick, int[] occupiedRows) {
+        }
+    }
+}
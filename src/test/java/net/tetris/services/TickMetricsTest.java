@@ -0,0 +1,51 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+public class TickMetricsTest {
+    private TickMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new TickMetrics();
+    }
+
+    @Test
+    public void shouldAccumulatePhaseTime() {
+        long started = System.nanoTime() - 1000;
+
+        long finished = metrics.phaseFinished(TickMetrics.Phase.STEP, started);
+        metrics.phaseFinished(TickMetrics.Phase.STEP, finished - 500);
+
+        assertTrue(metrics.getPhaseNanos(TickMetrics.Phase.STEP) >= 1500);
+        assertEquals(0, metrics.getPhaseNanos(TickMetrics.Phase.BOT_DISPATCH));
+    }
+
+    @Test
+    public void shouldCountTicksAndKeepLongest() {
+        metrics.tickFinished(System.nanoTime() - 5000000);
+        metrics.tickFinished(System.nanoTime() - 1000000);
+
+        assertEquals(2, metrics.getTicks());
+        assertTrue(metrics.getMaxTickNanos() >= 5000000);
+        assertTrue(metrics.getLastTickNanos() < metrics.getMaxTickNanos());
+        assertTrue(metrics.getTickNanos() >= 6000000);
+    }
+
+    @Test
+    public void shouldCountGlassEvents() {
+        metrics.linesRemoved(2);
+        metrics.linesRemoved(4);
+        metrics.glassOverflown();
+        metrics.figureDropped(Figure.Type.T.createNewFigure());
+
+        assertEquals(6, metrics.getLinesRemoved());
+        assertEquals(1, metrics.getOverflows());
+        assertEquals(1, metrics.getFiguresDropped());
+    }
+}
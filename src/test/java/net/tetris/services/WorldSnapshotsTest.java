@@ -0,0 +1,145 @@
+package net.tetris.services;
+
+import net.tetris.dom.Figure;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+public class WorldSnapshotsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WorldSnapshots snapshots;
+
+    @Before
+    public void setUp() throws IOException {
+        snapshots = new WorldSnapshots();
+        snapshots.setDirectory(folder.getRoot().getAbsolutePath());
+        snapshots.setInterval(10);
+        snapshots.init();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        snapshots.destroy();
+    }
+
+    @Test
+    public void shouldLoadSavedGames() throws IOException {
+        snapshots.write(20, 3, Arrays.asList(game("vasya", Figure.Type.T), game("petya", null)));
+
+        WorldSnapshots.Snapshot snapshot = snapshots.loadLatest();
+
+        assertEquals(20, snapshot.tick);
+        assertEquals(3, snapshot.mark);
+        assertEquals(2, snapshot.games.size());
+        assertGame(game("vasya", Figure.Type.T), snapshot.games.get(0));
+        assertGame(game("petya", null), snapshot.games.get(1));
+    }
+
+    @Test
+    public void shouldLoadManyGamesInOrder() throws IOException {
+        List<SavedGame> games = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            games.add(game("player" + i, Figure.Type.values()[i % Figure.Type.values().length]));
+        }
+        snapshots.write(10, 0, games);
+
+        WorldSnapshots.Snapshot snapshot = snapshots.loadLatest();
+
+        assertEquals(3000, snapshot.games.size());
+        for (int i = 0; i < games.size(); i++) {
+            assertGame(games.get(i), snapshot.games.get(i));
+        }
+    }
+
+    @Test
+    public void shouldFallBackToPreviousSnapshotWhenLatestIsCorrupt() throws IOException {
+        snapshots.write(10, 1, Arrays.asList(game("vasya", Figure.Type.I)));
+        snapshots.write(20, 2, Arrays.asList(game("vasya", Figure.Type.O)));
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), "snapshot-0000000000000020.bin"), "rw")) {
+            file.seek(30);
+            file.write(0x7f);
+        }
+
+        WorldSnapshots.Snapshot snapshot = snapshots.loadLatest();
+
+        assertEquals(10, snapshot.tick);
+        assertEquals(Figure.Type.I, snapshot.games.get(0).figureType);
+    }
+
+    @Test
+    public void shouldKeepLastSnapshots() throws InterruptedException {
+        for (int tick = 10; tick <= 40; tick += 10) {
+            snapshots.save(tick, tick, Arrays.asList(game("vasya", null)));
+        }
+        snapshots.destroy();
+
+        assertFalse(new File(folder.getRoot(), "snapshot-0000000000000020.bin").exists());
+        assertTrue(new File(folder.getRoot(), "snapshot-0000000000000030.bin").exists());
+        assertTrue(new File(folder.getRoot(), "snapshot-0000000000000040.bin").exists());
+    }
+
+    @Test
+    public void shouldBeDueEveryInterval() {
+        assertTrue(snapshots.isDue(20));
+        assertFalse(snapshots.isDue(21));
+    }
+
+    @Test
+    public void shouldDoNothingWhenDisabled() throws IOException {
+        WorldSnapshots disabled = new WorldSnapshots();
+        disabled.init();
+
+        assertFalse(disabled.isDue(60));
+        assertNull(disabled.loadLatest());
+    }
+
+    private static SavedGame game(String name, Figure.Type figureType) {
+        SavedGame game = new SavedGame();
+        game.name = name;
+        game.callbackUrl = figureType == null ? null : "http://" + name + ":1234";
+        game.token = "token-" + name;
+        game.score = 1510;
+        game.lines = 12;
+        game.level = 2;
+        game.figuresState = 0x123456789abL;
+        game.occupiedRows = new int[]{0b11111011110, 0b00000000110, 0, 0};
+        game.figureType = figureType;
+        game.rotation = 3;
+        game.x = 4;
+        game.y = 17;
+        game.dropRequested = true;
+        return game;
+    }
+
+    private static void assertGame(SavedGame expected, SavedGame actual) {
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.callbackUrl, actual.callbackUrl);
+        assertEquals(expected.token, actual.token);
+        assertEquals(expected.score, actual.score);
+        assertEquals(expected.lines, actual.lines);
+        assertEquals(expected.level, actual.level);
+        assertEquals(expected.figuresState, actual.figuresState);
+        assertTrue(Arrays.equals(expected.occupiedRows, actual.occupiedRows));
+        assertEquals(expected.figureType, actual.figureType);
+        assertEquals(expected.rotation, actual.rotation);
+        assertEquals(expected.x, actual.x);
+        assertEquals(expected.y, actual.y);
+        assertEquals(expected.dropRequested, actual.dropRequested);
+    }
+}
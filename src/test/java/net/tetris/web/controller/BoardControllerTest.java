@@ -10,12 +10,14 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.ui.ModelMap;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -54,6 +56,29 @@ public class BoardControllerTest {
         assertEquals("vasya", getPlayers().get(0).getName());
     }
 
+    @Test
+    public void shouldShowRequestedPageOfPlayers() {
+        when(playerService.getPlayersCount()).thenReturn(50);
+        when(playerService.getPlayers(20, 10)).thenReturn(Arrays.asList(new Player("vasya", "", new PlayerScores())));
+
+        boardController.boardAll(model, 3, 10);
+
+        assertEquals("vasya", getPlayers().get(0).getName());
+        assertEquals(5, model.get("pages"));
+        assertEquals(false, model.get("allPlayersScreen"));
+    }
+
+    @Test
+    public void shouldSubscribeToAllPlayersWhenTheyFitOnePage() {
+        when(playerService.getPlayersCount()).thenReturn(3);
+
+        boardController.boardAll(model, 7, 24);
+
+        verify(playerService).getPlayers(0, 24);
+        assertEquals(1, model.get("page"));
+        assertEquals(true, model.get("allPlayersScreen"));
+    }
+
     private List<Player> getPlayers() {
         return (List<Player>) model.get("players");
     }
@@ -0,0 +1,105 @@
+package net.tetris.web.controller;
+
+import net.tetris.dom.Joystick;
+import net.tetris.services.BotChannel;
+import net.tetris.services.BotChannels;
+import net.tetris.services.Player;
+import net.tetris.services.PlayerService;
+import org.eclipse.jetty.websocket.WebSocket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BotSocketControllerTest {
+    private BotChannels botChannels;
+    private Joystick joystick;
+    private BotSocketController controller;
+    private WebSocket.Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        PlayerService playerService = mock(PlayerService.class);
+        Player vasya = mock(Player.class);
+        when(vasya.hasToken("secret")).thenReturn(true);
+        joystick = mock(Joystick.class);
+        when(playerService.findPlayer("vasya")).thenReturn(vasya);
+        when(playerService.getJoystick("vasya")).thenReturn(joystick);
+        botChannels = new BotChannels();
+        controller = new BotSocketController(playerService, botChannels);
+        controller.init();
+        connection = mock(WebSocket.Connection.class);
+        when(connection.isOpen()).thenReturn(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        controller.destroy();
+    }
+
+    @Test
+    public void shouldRejectWrongToken() {
+        assertNull(controller.doWebSocketConnect(request("vasya", "guess"), null));
+        assertNull(controller.doWebSocketConnect(request("vasya", null), null));
+    }
+
+    @Test
+    public void shouldRejectUnknownPlayer() {
+        assertNull(controller.doWebSocketConnect(request("petya", "secret"), null));
+    }
+
+    @Test
+    public void shouldPushStateToOpenChannel() throws Exception {
+        WebSocket socket = connect();
+
+        BotChannel channel = botChannels.getChannel("vasya");
+        assertSame(socket, channel);
+        channel.sendState("figure=T&x=4&y=19&glass=");
+
+        verify(connection, timeout(1000)).sendMessage("figure=T&x=4&y=19&glass=");
+    }
+
+    @Test
+    public void shouldApplyCommandsFromBot() {
+        WebSocket.OnTextMessage socket = (WebSocket.OnTextMessage) connect();
+
+        socket.onMessage("left=2,rotate=1,drop");
+
+        verify(joystick).moveLeft(2);
+        verify(joystick).rotate(1);
+        verify(joystick).drop();
+    }
+
+    @Test
+    public void shouldUnregisterClosedChannel() {
+        WebSocket socket = connect();
+
+        socket.onClose(1000, "bye");
+
+        assertNull(botChannels.getChannel("vasya"));
+    }
+
+    private WebSocket connect() {
+        WebSocket socket = controller.doWebSocketConnect(request("vasya", "secret"), null);
+        assertNotNull(socket);
+        socket.onOpen(connection);
+        return socket;
+    }
+
+    private static MockHttpServletRequest request(String name, String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/bot");
+        request.addParameter("name", name);
+        if (token != null) {
+            request.addParameter("token", token);
+        }
+        return request;
+    }
+}
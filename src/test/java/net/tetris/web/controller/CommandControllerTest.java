@@ -0,0 +1,80 @@
+package net.tetris.web.controller;
+
+import net.tetris.dom.Joystick;
+import net.tetris.services.Player;
+import net.tetris.services.PlayerService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CommandControllerTest {
+    @Mock
+    private PlayerService playerService;
+    @Mock
+    private Player vasya;
+    @Mock
+    private Joystick joystick;
+    private CommandController commandController;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() throws Exception {
+        commandController = new CommandController(playerService);
+        response = new MockHttpServletResponse();
+        when(playerService.findPlayer("vasya")).thenReturn(vasya);
+        when(playerService.getJoystick("vasya")).thenReturn(joystick);
+        when(vasya.hasToken("secret")).thenReturn(true);
+    }
+
+    @Test
+    public void shouldApplyCommandsWhenTokenValid() throws IOException {
+        commandController.submitCommands("vasya", "secret", "left=2,drop", response);
+
+        verify(joystick).moveLeft(2);
+        verify(joystick).drop();
+        assertEquals(204, response.getStatus());
+    }
+
+    @Test
+    public void shouldRejectCommandsWhenTokenInvalid() throws IOException {
+        commandController.submitCommands("vasya", "wrong", "left=2", response);
+
+        verifyZeroInteractions(joystick);
+        assertEquals(403, response.getStatus());
+    }
+
+    @Test
+    public void shouldRejectCommandsWhenPlayerNotFound() throws IOException {
+        commandController.submitCommands("petya", "secret", "left=2", response);
+
+        verifyZeroInteractions(joystick);
+        assertEquals(404, response.getStatus());
+    }
+
+    @Test
+    public void shouldReturnStateWhenTokenValid() throws IOException {
+        when(playerService.getBotState("vasya")).thenReturn("figure=T&x=4&y=19&glass=");
+
+        commandController.currentState("vasya", "secret", response);
+
+        assertEquals("figure=T&x=4&y=19&glass=", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldNotReturnStateWhenTokenInvalid() throws IOException {
+        commandController.currentState("vasya", "wrong", response);
+
+        verify(playerService, never()).getBotState(anyString());
+        assertEquals(403, response.getStatus());
+    }
+}
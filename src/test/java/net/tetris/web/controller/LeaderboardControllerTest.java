@@ -0,0 +1,63 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.Leaderboard;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+
+public class LeaderboardControllerTest {
+    private Leaderboard leaderboard;
+    private LeaderboardController controller;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        leaderboard = new Leaderboard();
+        controller = new LeaderboardController(leaderboard);
+        request = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+        leaderboard.update("vasya", 100);
+        leaderboard.update("pe\"tya", 200);
+    }
+
+    @Test
+    public void shouldWriteTopPlayers() throws IOException {
+        controller.top(0, 10, request, response);
+
+        assertEquals("application/json;charset=UTF-8", response.getContentType());
+        assertEquals("{\"players\":[{\"name\":\"pe\\\"tya\",\"score\":200,\"rank\":1}," +
+                "{\"name\":\"vasya\",\"score\":100,\"rank\":2}],\"total\":2}", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldWritePlayerRank() throws IOException {
+        controller.rank("vasya", request, response);
+
+        assertEquals("{\"name\":\"vasya\",\"score\":100,\"rank\":2}", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldRespondNotModifiedForSameVersion() throws IOException {
+        controller.top(0, 10, request, response);
+        request.addHeader("If-None-Match", response.getHeader("ETag"));
+        response = new MockHttpServletResponse();
+
+        controller.top(0, 10, request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldRespondNotFoundForUnknownPlayer() throws IOException {
+        controller.rank("katya", request, response);
+
+        assertEquals(404, response.getStatus());
+    }
+}
@@ -0,0 +1,65 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.Player;
+import net.tetris.services.PlayerController;
+import net.tetris.services.PlayerScores;
+import net.tetris.services.PlayerService;
+import net.tetris.services.ScreenSender;
+import net.tetris.services.TickMetrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetricsControllerTest {
+    private TickMetrics metrics;
+    private MetricsController controller;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        metrics = new TickMetrics();
+        PlayerService playerService = mock(PlayerService.class);
+        ScreenSender screenSender = mock(ScreenSender.class);
+        PlayerController playerController = mock(PlayerController.class);
+        when(playerService.getPlayers()).thenReturn(Arrays.asList(
+                new Player("vasya", "http://vasya:1234", new PlayerScores()),
+                new Player("petya", "http://petya:1234", new PlayerScores())));
+        when(screenSender.getPendingCount()).thenReturn(7);
+        when(playerController.getInFlightCount()).thenReturn(3);
+        controller = new MetricsController(metrics, playerService, screenSender, playerController);
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void shouldWritePrometheusText() throws IOException {
+        metrics.tickFinished(System.nanoTime());
+        metrics.linesRemoved(4);
+        metrics.glassOverflown();
+
+        controller.metrics(response);
+
+        assertEquals("text/plain; version=0.0.4; charset=utf-8", response.getContentType());
+        String text = response.getContentAsString();
+        assertContains(text, "# TYPE tetris_tick_phase_seconds summary\n");
+        assertContains(text, "tetris_tick_phase_seconds_count{phase=\"lock_wait\"} 1\n");
+        assertContains(text, "tetris_tick_phase_seconds_count{phase=\"bot_dispatch\"} 1\n");
+        assertContains(text, "tetris_tick_seconds_count 1\n");
+        assertContains(text, "tetris_players 2\n");
+        assertContains(text, "tetris_pending_screen_requests 7\n");
+        assertContains(text, "tetris_bot_exchanges_in_flight 3\n");
+        assertContains(text, "tetris_lines_removed_total 4\n");
+        assertContains(text, "tetris_glass_overflows_total 1\n");
+    }
+
+    private static void assertContains(String text, String expected) {
+        assertTrue("Expected " + expected + " in " + text, text.contains(expected));
+    }
+}
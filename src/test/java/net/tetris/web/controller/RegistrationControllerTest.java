@@ -0,0 +1,106 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.Player;
+import net.tetris.services.PlayerService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.web.servlet.mvc.support.RedirectAttributesModelMap;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RegistrationControllerTest {
+    private PlayerService playerService;
+    private RegistrationController controller;
+    private RedirectAttributesModelMap redirectAttributes;
+    private Player vasya;
+
+    @Before
+    public void setUp() {
+        playerService = mock(PlayerService.class);
+        controller = new RegistrationController(playerService);
+        redirectAttributes = new RedirectAttributesModelMap();
+        vasya = mock(Player.class);
+        when(vasya.getName()).thenReturn("vasya");
+        when(vasya.getToken()).thenReturn("secret");
+        when(vasya.hasToken("secret")).thenReturn(true);
+    }
+
+    @Test
+    public void shouldGiveTokenToNewPlayer() {
+        when(playerService.addNewPlayer("vasya", "http://bot")).thenReturn(vasya);
+        Player form = new Player("vasya", "http://bot", null);
+
+        String view = controller.submitRegistrationForm(form, bindingResult(form), null, redirectAttributes);
+
+        assertEquals("redirect:/board/vasya", view);
+        assertEquals("secret", redirectAttributes.getFlashAttributes().get("token"));
+    }
+
+    @Test
+    public void shouldRejectExistingNameWithoutToken() {
+        when(playerService.findPlayer("vasya")).thenReturn(vasya);
+        Player form = new Player("vasya", "http://evil", null);
+        BindingResult result = bindingResult(form);
+
+        String view = controller.submitRegistrationForm(form, result, null, redirectAttributes);
+
+        assertEquals("register", view);
+        assertTrue(result.hasFieldErrors("name"));
+        assertFalse(redirectAttributes.getFlashAttributes().containsKey("token"));
+        verify(playerService, never()).updatePlayer(any(Player.class));
+        verify(playerService, never()).addNewPlayer(anyString(), anyString());
+    }
+
+    @Test
+    public void shouldRejectExistingNameWithWrongToken() {
+        when(playerService.findPlayer("vasya")).thenReturn(vasya);
+        Player form = new Player("vasya", "http://evil", null);
+        BindingResult result = bindingResult(form);
+
+        String view = controller.submitRegistrationForm(form, result, "guess", redirectAttributes);
+
+        assertEquals("register", view);
+        assertFalse(redirectAttributes.getFlashAttributes().containsKey("token"));
+        verify(playerService, never()).updatePlayer(any(Player.class));
+    }
+
+    @Test
+    public void shouldUpdateUrlWithCurrentTokenWithoutSendingItBack() {
+        when(playerService.findPlayer("vasya")).thenReturn(vasya);
+        Player form = new Player("vasya", "http://new", null);
+
+        String view = controller.submitRegistrationForm(form, bindingResult(form), "secret", redirectAttributes);
+
+        assertEquals("redirect:/board/vasya", view);
+        verify(playerService).updatePlayer(form);
+        assertFalse(redirectAttributes.getFlashAttributes().containsKey("token"));
+    }
+
+    @Test
+    public void shouldRejectNameReservedForScreenParameters() {
+        for (String name : new String[]{"seq", "format", "every", "client", "allPlayersScreen"}) {
+            Player form = new Player(name, "http://bot", null);
+            BindingResult result = bindingResult(form);
+
+            String view = controller.submitRegistrationForm(form, result, null, redirectAttributes);
+
+            assertEquals("register", view);
+            assertTrue(result.hasFieldErrors("name"));
+        }
+        verify(playerService, never()).addNewPlayer(anyString(), anyString());
+    }
+
+    private BindingResult bindingResult(Player form) {
+        return new BeanPropertyBindingResult(form, "player");
+    }
+}
@@ -0,0 +1,41 @@
+package net.tetris.web.controller;
+
+import net.tetris.services.ScoreHistory;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+
+public class ScoreControllerTest {
+    private ScoreHistory scoreHistory;
+    private ScoreController controller;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        scoreHistory = new ScoreHistory();
+        controller = new ScoreController(scoreHistory);
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void shouldWritePoints() throws IOException {
+        scoreHistory.record(1, "vasya", 100, 1);
+        scoreHistory.record(2, "vasya", 110, 1);
+
+        controller.scores("vasya", 0, Long.MAX_VALUE, 500, response);
+
+        assertEquals("application/json;charset=UTF-8", response.getContentType());
+        assertEquals("{\"step\":1,\"points\":[[1,100,1],[2,110,1]]}", response.getContentAsString());
+    }
+
+    @Test
+    public void shouldRespondNotFoundForUnknownPlayer() throws IOException {
+        controller.scores("petya", 0, Long.MAX_VALUE, 500, response);
+
+        assertEquals(404, response.getStatus());
+    }
+}
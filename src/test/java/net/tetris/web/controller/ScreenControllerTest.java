@@ -1,5 +1,6 @@
 package net.tetris.web.controller;
 
+import net.tetris.services.ScreenFormat;
 import net.tetris.services.ScreenSender;
 import org.fest.assertions.CollectionAssert;
 import org.junit.Before;
@@ -18,6 +19,8 @@ import java.io.IOException;
 import java.util.*;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
@@ -67,6 +70,84 @@ public class ScreenControllerTest {
         assertNull(updateRequest.getPlayersToUpdate());
     }
 
+    @Test
+    public void shouldNotTreatProtocolParametersAsPlayers() throws IOException, ServletException {
+        request.addParameter("vasya", "vasya");
+        request.addParameter("seq", "15");
+        request.addParameter("_", "1341234123");
+
+        screenController.handleRequest(request, new MockHttpServletResponse());
+
+        verify(screenSender).scheduleUpdate(updateRequestCaptor.capture());
+        assertThat(updateRequestCaptor.getValue().getPlayersToUpdate()).containsOnly("vasya");
+        assertEquals(15, updateRequestCaptor.getValue().getLastSequence());
+    }
+
+    @Test
+    public void shouldNotUseSequenceWhenNotRequested() throws IOException, ServletException {
+        request.addParameter("vasya", "vasya");
+
+        screenController.handleRequest(request, new MockHttpServletResponse());
+
+        verify(screenSender).scheduleUpdate(updateRequestCaptor.capture());
+        assertEquals(-1, updateRequestCaptor.getValue().getLastSequence());
+    }
+
+    @Test
+    public void shouldRequestCompactFormat() throws IOException, ServletException {
+        request.addParameter("vasya", "vasya");
+        request.addParameter("format", "compact");
+
+        screenController.handleRequest(request, new MockHttpServletResponse());
+
+        verify(screenSender).scheduleUpdate(updateRequestCaptor.capture());
+        assertThat(updateRequestCaptor.getValue().getPlayersToUpdate()).containsOnly("vasya");
+        assertEquals(ScreenFormat.COMPACT, updateRequestCaptor.getValue().getFormat());
+    }
+
+    @Test
+    public void shouldRequestEveryNthThumbnailFrame() throws IOException, ServletException {
+        request.addParameter("allPlayersScreen", "true");
+        request.addParameter("format", "thumbnail");
+        request.addParameter("every", "5");
+
+        screenController.handleRequest(request, new MockHttpServletResponse());
+
+        verify(screenSender).scheduleUpdate(updateRequestCaptor.capture());
+        assertEquals(ScreenFormat.THUMBNAIL, updateRequestCaptor.getValue().getFormat());
+        assertEquals(5, updateRequestCaptor.getValue().getEvery());
+    }
+
+    @Test
+    public void shouldPassClientIdForCoalescing() throws IOException, ServletException {
+        request.addParameter("vasya", "vasya");
+        request.addParameter("client", "page1");
+
+        screenController.handleRequest(request, new MockHttpServletResponse());
+
+        verify(screenSender).scheduleUpdate(updateRequestCaptor.capture());
+        assertThat(updateRequestCaptor.getValue().getPlayersToUpdate()).containsOnly("vasya");
+        assertEquals("page1", updateRequestCaptor.getValue().getClientId());
+    }
+
+    @Test
+    public void shouldAcceptGzipWhenClientAcceptsIt() throws IOException, ServletException {
+        request.addParameter("vasya", "vasya");
+        request.addHeader("Accept-Encoding", "deflate, gzip;q=0.8");
+
+        screenController.handleRequest(request, new MockHttpServletResponse());
+
+        verify(screenSender).scheduleUpdate(updateRequestCaptor.capture());
+        assertTrue(updateRequestCaptor.getValue().isGzipAccepted());
+    }
+
+    @Test
+    public void shouldNotAcceptGzipWhenRefused() {
+        assertFalse(ScreenController.acceptsGzip(null));
+        assertFalse(ScreenController.acceptsGzip("deflate"));
+        assertFalse(ScreenController.acceptsGzip("gzip;q=0"));
+    }
+
     private CollectionAssert assertUpdateRequestContainsPlayer(String playerName) {
         return assertThat(updateRequestCaptor.getValue().getPlayersToUpdate()).contains(playerName);
     }
@@ -85,7 +166,7 @@ public class ScreenControllerTest {
 
         @Override
         public AsyncContext startAsync() throws IllegalStateException {
-            return null;
+            return mock(AsyncContext.class);
         }
 
         @Override